@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) Markus Duft <markus.duft@salomon.at>
+ */
+package org.rapfx.client.lifecycle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.rapfx.client.transport.Transport;
+import org.rapfx.client.transport.Transport.Timing;
+
+/**
+ * Calculates how long {@link LifeCycle#queue(org.rapfx.client.protocol.types.Operation...)} waits
+ * for more {@link org.rapfx.client.protocol.types.Operation}s before flushing them to the server.
+ * <p>
+ * The window follows the cost of a request: a smoothed average (like TCP's SRTT) of the network
+ * round trip time and the server's processing time, as reported by the {@link Transport}, is
+ * tracked and half of it is used as window. On a LAN this flushes almost immediately, on slow
+ * links more {@link org.rapfx.client.protocol.types.Operation}s are batched into a single request.
+ * The window is always kept within the configured floor and ceiling.
+ */
+public class BatchWindow {
+
+    /**
+     * The window used as long as no round trip has been measured.
+     */
+    public static final int DEFAULT_WINDOW = 100;
+
+    private static final int DEFAULT_FLOOR = 5;
+    private static final int DEFAULT_CEILING = 400;
+    private static final int HISTORY_SIZE = 64;
+
+    /**
+     * Weight of a new sample in the smoothed averages.
+     */
+    private static final double ALPHA = 0.125;
+
+    private int floor = DEFAULT_FLOOR;
+    private int ceiling = DEFAULT_CEILING;
+
+    private double smoothedNetwork = -1;
+    private double smoothedServer;
+    private int window = DEFAULT_WINDOW;
+
+    private final Sample[] history = new Sample[HISTORY_SIZE];
+    private int historyNext;
+    private int historyCount;
+
+    /**
+     * @return the current window in milliseconds.
+     */
+    public synchronized int getWindow() {
+        return window;
+    }
+
+    /**
+     * @return the lower bound of the window in milliseconds.
+     */
+    public synchronized int getFloor() {
+        return floor;
+    }
+
+    /**
+     * @return the upper bound of the window in milliseconds.
+     */
+    public synchronized int getCeiling() {
+        return ceiling;
+    }
+
+    /**
+     * Sets the bounds for the window. The current window is clamped to the new bounds immediately.
+     * 
+     * @param floor
+     *            the lower bound in milliseconds
+     * @param ceiling
+     *            the upper bound in milliseconds
+     * @throws IllegalArgumentException
+     *             if floor is negative or ceiling is below floor
+     */
+    public synchronized void setBounds(int floor, int ceiling) {
+        if (floor < 0 || ceiling < floor) {
+            throw new IllegalArgumentException("illegal batch window bounds: " + floor + " - "
+                    + ceiling);
+        }
+
+        this.floor = floor;
+        this.ceiling = ceiling;
+        window = clamp(window);
+    }
+
+    /**
+     * Records the {@link Timing} of a request and updates the window accordingly.
+     * 
+     * @param timing
+     *            the {@link Timing} of the last request, ignored if <code>null</code>.
+     */
+    public synchronized void record(Timing timing) {
+        if (timing == null) {
+            return;
+        }
+
+        long server = timing.getServerMillis();
+        long network = timing.getRoundTripMillis();
+        if (server >= 0) {
+            network = Math.max(0, network - server);
+        } else {
+            server = 0;
+        }
+
+        if (smoothedNetwork < 0) {
+            smoothedNetwork = network;
+            smoothedServer = server;
+        } else {
+            smoothedNetwork += ALPHA * (network - smoothedNetwork);
+            smoothedServer += ALPHA * (server - smoothedServer);
+        }
+
+        window = clamp((int) Math.round((smoothedNetwork + smoothedServer) / 2));
+
+        history[historyNext] = new Sample(timing, window);
+        historyNext = (historyNext + 1) % HISTORY_SIZE;
+        historyCount = Math.min(historyCount + 1, HISTORY_SIZE);
+    }
+
+    /**
+     * @return the most recent {@link Sample}s, oldest first.
+     */
+    public synchronized List<Sample> getHistory() {
+        List<Sample> result = new ArrayList<>(historyCount);
+        int first = (historyNext - historyCount + HISTORY_SIZE) % HISTORY_SIZE;
+        for (int i = 0; i < historyCount; ++i) {
+            result.add(history[(first + i) % HISTORY_SIZE]);
+        }
+        return result;
+    }
+
+    private int clamp(int value) {
+        return Math.max(floor, Math.min(ceiling, value));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BatchWindow[" + window + "ms, " + floor + "-" + ceiling + "ms]";
+    }
+
+    /**
+     * A recorded {@link Timing} along with the window that resulted from it.
+     */
+    public static class Sample {
+
+        private final Timing timing;
+        private final int window;
+
+        private Sample(Timing timing, int window) {
+            this.timing = timing;
+            this.window = window;
+        }
+
+        /**
+         * @return the recorded {@link Timing}.
+         */
+        public Timing getTiming() {
+            return timing;
+        }
+
+        /**
+         * @return the window in milliseconds after recording the {@link Timing}.
+         */
+        public int getWindow() {
+            return window;
+        }
+
+        @Override
+        public String toString() {
+            return timing + " -> " + window + "ms";
+        }
+
+    }
+
+}
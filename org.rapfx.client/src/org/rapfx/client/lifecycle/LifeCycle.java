@@ -3,16 +3,22 @@
  */
 package org.rapfx.client.lifecycle;
 
+import java.util.List;
 import java.util.Timer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.rapfx.client.lifecycle.OutboundQueue.Lane;
 import org.rapfx.client.protocol.Message;
 import org.rapfx.client.protocol.types.Header;
 import org.rapfx.client.protocol.types.Operation;
 import org.rapfx.client.protocol.types.RemoteObject;
 import org.rapfx.client.protocol.types.TypeHandler;
 import org.rapfx.client.transport.Transport;
+import org.rapfx.client.transport.Transport.OperationSink;
 import org.rapfx.client.widgets.WidgetToolkit;
 
 /**
@@ -22,11 +28,6 @@ public class LifeCycle {
 
     private static final Log log = LogFactory.getLog(LifeCycle.class);
 
-    /**
-     * Timeout after which the queue is automatically flushed if no new operations are added.
-     */
-    private static final int QUEUE_TIMEOUT = 100;
-
     /**
      * The {@link Transport} used by this {@link LifeCycle}.
      */
@@ -38,9 +39,15 @@ public class LifeCycle {
     private final WidgetToolkit toolkit;
 
     /**
-     * The currently pending {@link Message} that will be sent with the next {@link #flush()}.
+     * The currently pending {@link Operation}s that will be sent with the next {@link #flush()}s.
      */
-    private Message currentMessage = new Message();
+    private final OutboundQueue outbound = new OutboundQueue();
+
+    /**
+     * Adapts the time {@link #queue(Operation...)} waits before flushing to the measured round
+     * trip time.
+     */
+    private final BatchWindow batchWindow = new BatchWindow();
 
     /**
      * Registry which keeps track of all supported type handlers.
@@ -57,6 +64,20 @@ public class LifeCycle {
      */
     private final LifeCycleState state = new LifeCycleState();
 
+    /**
+     * Executor performing all communication with the server (serialization, request and parsing
+     * of the response) in a dedicated {@link Thread}, so that the {@link WidgetToolkit}s UI thread
+     * is never blocked by the network.
+     */
+    private final ExecutorService io = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "RAP Client I/O");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     /**
      * Runnable that flushes the current message to the server.
      */
@@ -107,7 +128,7 @@ public class LifeCycle {
         }
 
         // the first message posted to the server shall carry this flag!
-        currentMessage.addHeader(new Header("rwt_initialize", true));
+        outbound.addHeader(new Header("rwt_initialize", true));
 
         // signal that the lifecycle is initailzed.
         state.initialized();
@@ -122,43 +143,41 @@ public class LifeCycle {
     }
 
     /**
-     * Queues an {@link Operation} to be sent to the server on the next {@link #flush()}. A
-     * {@link Timer} is started to automatically flush the message to the server if no more
-     * {@link Operation}s are queued within the next few (currently 50) milliseconds.
+     * Sends {@link Operation}s to the server as soon as possible. They are sent in a minimal
+     * {@link Message}, only accompanied by queued {@link Operation}s that are not deferrable (see
+     * {@link Operation#isDeferrable()}), so that the server sees the current state of widgets when
+     * handling them. Use for user actions like selection or closing a window.
      * 
-     * @param op
-     *            operation to execute remotely
+     * @param ops
+     *            operations to execute remotely
      */
     public synchronized void send(Operation... ops) {
-        queueUnlocked(0, ops);
+        outbound.add(Lane.URGENT, ops);
+        flush();
     }
 
     /**
+     * Queues {@link Operation}s to be sent to the server on the next {@link #flush()}. A
+     * {@link Timer} is started to automatically flush the message to the server if no more
+     * {@link Operation}s are queued within the current {@link BatchWindow}. Use for property
+     * synchronization.
+     * 
      * @param ops
+     *            operations to execute remotely
      */
     public synchronized void queue(Operation... ops) {
-        queueUnlocked(QUEUE_TIMEOUT, ops);
-    }
-
-    private void queueUnlocked(int millis, Operation... ops) {
-        if (currentMessage == null) {
-            currentMessage = new Message();
-        }
-
-        for (Operation op : ops) {
-            currentMessage.addOperation(op);
-        }
-
-        if (millis == 0) {
-            flush();
-        } else {
-            toolkit.execute(flush, millis);
-        }
+        outbound.add(Lane.BACKGROUND, ops);
+        toolkit.execute(flush, batchWindow.getWindow());
     }
 
     /**
-     * Flushes the currently pending {@link Message} to the server, if there is one. This keeps on
-     * going until the response from the server does not immediately cause widgets to flush again.
+     * Flushes the currently pending {@link Message} to the server, if there is one. The
+     * {@link Message} is sent and the response is received in the background, the response is then
+     * dispatched in the {@link WidgetToolkit}s thread. This keeps on going until the response from
+     * the server does not immediately cause widgets to flush again.
+     * <p>
+     * Only one {@link Message} is on its way at any time: flushing while a previous request is
+     * still in progress or its response is dispatched only requests another flush afterwards.
      */
     public synchronized void flush() {
         // if we are already dispatching, just request a flush for afterwards.
@@ -167,36 +186,97 @@ public class LifeCycle {
             return;
         }
 
-        // as long as the response causes new requests, keep going.
-        do {
-            state.beginDispatch();
-            Message response = null;
-            Message toSend;
+        Message next = outbound.poll();
+        if (next == null) {
+            return;
+        }
 
-            try {
-                synchronized (this) {
-                    if (currentMessage == null) {
-                        return;
-                    }
+        // deferred background operations are still waiting for their batch to be sent.
+        if (!outbound.isEmpty()) {
+            toolkit.execute(flush, batchWindow.getWindow());
+        }
 
-                    toSend = currentMessage;
-                    currentMessage = null;
-                }
+        // capture live values while still in the toolkit's thread.
+        final Message toSend = next.snapshot();
 
-                if (log.isTraceEnabled()) {
-                    log.trace("sending: " + toSend);
-                }
+        state.beginDispatch();
+        io.execute(new Runnable() {
+            @Override
+            public void run() {
+                post(toSend);
+            }
+        });
+    }
 
-                response = transport.post(toSend);
+    /**
+     * Sends the given {@link Message} to the server and hands the response over to the
+     * {@link WidgetToolkit}. Runs in the I/O {@link Thread}.
+     * <p>
+     * {@link Operation}s of the response are handed over in chunks while the response is still
+     * being read, so the {@link WidgetToolkit} can start processing early. The headers of the
+     * response are handled by the {@link Transport} once the response is complete, afterwards the
+     * dispatch cycle is ended.
+     * 
+     * @param toSend
+     *            the {@link Message} to send.
+     */
+    private void post(Message toSend) {
+        Message response = null;
+        try {
+            if (log.isTraceEnabled()) {
+                log.trace("sending: " + toSend);
+            }
+
+            response = transport.post(toSend, new OperationSink() {
+                @Override
+                public void accept(List<Operation> operations) {
+                    Message chunk = new Message();
+                    for (Operation op : operations) {
+                        chunk.addOperation(op);
+                    }
 
-                if (response != null) {
-                    toolkit.dispatch(response);
+                    // queued in order with the final asyncExec below.
+                    toolkit.dispatch(chunk);
                 }
+            });
+            batchWindow.record(transport.getLastTiming());
+        } catch (Exception e) {
+            log.error("failed to communicate with the server", e);
+        }
+
+        final Message received = response;
+        toolkit.asyncExec(new Runnable() {
+            @Override
+            public void run() {
+                dispatch(received);
+            }
+        });
+    }
 
-            } finally {
+    /**
+     * Dispatches a response from the server in the {@link WidgetToolkit}s {@link Thread} and ends
+     * the current dispatch cycle. If {@link Operation}s have been flushed in the meantime, the next
+     * cycle is started right away.
+     * 
+     * @param response
+     *            the response to dispatch, may be <code>null</code> if sending failed.
+     */
+    private void dispatch(Message response) {
+        try {
+            if (response != null) {
+                toolkit.dispatch(response);
+            }
+        } finally {
+            boolean again;
+            synchronized (this) {
                 state.endDispatch();
+                again = state.isFlushRequired();
             }
-        } while (state.isFlushRequired());
+
+            if (again) {
+                flush();
+            }
+        }
     }
 
     /**
@@ -206,6 +286,14 @@ public class LifeCycle {
         return state.isDispatching();
     }
 
+    /**
+     * @return the {@link BatchWindow} determining how long {@link #queue(Operation...)} batches
+     *         {@link Operation}s before sending them.
+     */
+    public BatchWindow getBatchWindow() {
+        return batchWindow;
+    }
+
     /**
      * @return the registry for all {@link TypeHandler}s in this {@link LifeCycle}.
      *         {@link TypeHandler}s are registered by the {@link WidgetToolkit} implementation.
@@ -226,12 +314,13 @@ public class LifeCycle {
      */
     private final class LifeCycleState {
 
-        private boolean initialized;
-        private boolean dispatchActive;
-        private boolean wantFlushAfterDispatch;
+        private volatile boolean initialized;
+        private volatile boolean dispatchActive;
+        private volatile boolean wantFlushAfterDispatch;
 
         /**
-         * Signals that dispatching is now active.
+         * Signals that dispatching is now active. Dispatching covers the whole cycle of sending a
+         * {@link Message}, waiting for the response and dispatching it.
          */
         public void beginDispatch() {
             dispatchActive = true;
@@ -3,16 +3,71 @@
  */
 package org.rapfx.client.lifecycle;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Holds references to all known objects, reference-able through their ID.
+ * <p>
+ * The registry is specialized for the IDs generated by RAP for remote objects, which consist of a
+ * single letter followed by a number (e.g. "w1234"). Those IDs are encoded into a primitive
+ * <code>long</code> key and kept in an open addressing hash table, so lookups neither compare nor
+ * retain {@link String}s. All other IDs (e.g. "rwt.theme.ThemeStore") are kept in a
+ * {@link HashMap}.
+ * <p>
+ * The registry may be read from any {@link Thread} concurrently to modifications. Additionally,
+ * {@link TypeIndex}es can be requested through {@link #getIndex(Class)}, which keep track of all
+ * objects of a certain type and notify {@link IndexListener}s about changes.
  */
 public class ObjectRegistry<T> {
 
-    private final Map<String, T> objects = new TreeMap<>();
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Marks an unused slot in {@link #keys}. Encoded keys are never negative.
+     */
+    private static final long FREE = -1;
+
+    /**
+     * Encoded keys of the open addressing table, {@link #FREE} for unused slots.
+     */
+    private long[] keys = newKeys(INITIAL_CAPACITY);
+
+    /**
+     * Values of the open addressing table, at the same index as their key.
+     */
+    private Object[] values = new Object[INITIAL_CAPACITY];
+
+    /**
+     * Number of used slots in the open addressing table.
+     */
+    private int used;
+
+    /**
+     * Objects whose IDs cannot be encoded.
+     */
+    private final Map<String, T> others = new HashMap<>();
+
+    /**
+     * Guards all of the above.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * All {@link TypeIndex}es requested so far.
+     */
+    private final List<TypeIndex<?>> indexes = new CopyOnWriteArrayList<>();
 
     /**
      * Stores the given object instance under the given key.
@@ -23,11 +78,40 @@ public class ObjectRegistry<T> {
      *            the object instance
      */
     public void set(String id, T obj) {
-        if (objects.containsKey(id)) {
+        lock.writeLock().lock();
+        try {
+            setUnlocked(id, obj);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        for (TypeIndex<?> index : indexes) {
+            index.added(id, obj);
+        }
+    }
+
+    private void setUnlocked(String id, T obj) {
+        long key = encode(id);
+        if (key == FREE) {
+            if (others.containsKey(id)) {
+                throw new IllegalStateException("object already registered: " + id);
+            }
+            others.put(id, obj);
+            return;
+        }
+
+        int slot = find(key);
+        if (keys[slot] == key) {
             throw new IllegalStateException("object already registered: " + id);
         }
 
-        objects.put(id, obj);
+        keys[slot] = key;
+        values[slot] = obj;
+
+        // keep the load factor at or below 1/2 for short probe sequences.
+        if (++used * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
     }
 
     /**
@@ -40,7 +124,19 @@ public class ObjectRegistry<T> {
      */
     @SuppressWarnings("unchecked")
     public <X extends T> X get(String id) {
-        return (X) objects.get(id);
+        long key = encode(id);
+
+        lock.readLock().lock();
+        try {
+            if (key == FREE) {
+                return (X) others.get(id);
+            }
+
+            int slot = find(key);
+            return keys[slot] == key ? (X) values[slot] : null;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
@@ -50,13 +146,306 @@ public class ObjectRegistry<T> {
      *            the id of the object to remove.
      */
     public void remove(String id) {
-        objects.remove(id);
+        T removed;
+        lock.writeLock().lock();
+        try {
+            removed = removeUnlocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (removed != null) {
+            for (TypeIndex<?> index : indexes) {
+                index.removed(id, removed);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T removeUnlocked(String id) {
+        long key = encode(id);
+        if (key == FREE) {
+            return others.remove(id);
+        }
+
+        int slot = find(key);
+        if (keys[slot] != key) {
+            return null;
+        }
+        T removed = (T) values[slot];
+
+        // backward shift deletion: move following entries of the probe sequence up, so that no
+        // tombstones are required.
+        int mask = keys.length - 1;
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+
+        keys[free] = FREE;
+        values[free] = null;
+        used--;
+
+        return removed;
+    }
+
+    /**
+     * @return the number of objects in the registry.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return used + others.size();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /**
-     * @return all entries in the registry
+     * @return a snapshot of all entries in the registry, sorted by ID.
      */
+    @SuppressWarnings("unchecked")
     public Set<Map.Entry<String, T>> getAll() {
-        return objects.entrySet();
+        lock.readLock().lock();
+        try {
+            Map<String, T> result = new TreeMap<>(others);
+            for (int i = 0; i < keys.length; ++i) {
+                if (keys[i] != FREE) {
+                    result.put(decode(keys[i]), (T) values[i]);
+                }
+            }
+            return Collections.unmodifiableMap(result).entrySet();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the {@link TypeIndex} for the given type, creating and populating it on first
+     * request.
+     * 
+     * @param type
+     *            the type of objects to keep track of, including sub-types.
+     * @return the {@link TypeIndex} for the given type.
+     */
+    public synchronized <X extends T> TypeIndex<X> getIndex(Class<X> type) {
+        for (TypeIndex<?> index : indexes) {
+            if (index.type.equals(type)) {
+                @SuppressWarnings("unchecked")
+                TypeIndex<X> result = (TypeIndex<X>) index;
+                return result;
+            }
+        }
+
+        TypeIndex<X> index = new TypeIndex<>(type);
+
+        // register first, so that no concurrent addition is missed while populating. populating
+        // with the read lock held defers concurrent removals (and their notifications) until after.
+        indexes.add(index);
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, T> entry : getAll()) {
+                index.added(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return index;
+    }
+
+    /**
+     * @param key
+     *            the encoded key to look for
+     * @return the slot containing the key, or the free slot where it would be inserted.
+     */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        keys = newKeys(capacity);
+        values = new Object[capacity];
+
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] != FREE) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static long[] newKeys(int capacity) {
+        long[] result = new long[capacity];
+        Arrays.fill(result, FREE);
+        return result;
+    }
+
+    /**
+     * Spreads the bits of the encoded key, as consecutive IDs only differ in the lowest bits.
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Encodes IDs consisting of a single ASCII letter followed by a number without leading zeros
+     * that fits into an <code>int</code>.
+     * 
+     * @param id
+     *            the ID to encode
+     * @return the encoded key, or {@link #FREE} if the ID cannot be encoded.
+     */
+    private static long encode(String id) {
+        int length = id.length();
+        if (length < 2 || length > 10) {
+            return FREE;
+        }
+
+        char prefix = id.charAt(0);
+        if (!((prefix >= 'a' && prefix <= 'z') || (prefix >= 'A' && prefix <= 'Z'))) {
+            return FREE;
+        }
+
+        if (id.charAt(1) == '0' && length > 2) {
+            return FREE;
+        }
+
+        long number = 0;
+        for (int i = 1; i < length; ++i) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return FREE;
+            }
+            number = number * 10 + (c - '0');
+        }
+
+        if (number > Integer.MAX_VALUE) {
+            return FREE;
+        }
+
+        return ((long) prefix << 32) | number;
+    }
+
+    private static String decode(long key) {
+        return (char) (key >>> 32) + Long.toString(key & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Receives notifications about changes to a {@link TypeIndex}. Notifications are delivered in
+     * the {@link Thread} modifying the {@link ObjectRegistry}.
+     * 
+     * @param <X>
+     *            the type of objects in the {@link TypeIndex}
+     */
+    public interface IndexListener<X> {
+
+        /**
+         * @param id
+         *            the ID of the added object
+         * @param obj
+         *            the added object
+         */
+        public void added(String id, X obj);
+
+        /**
+         * @param id
+         *            the ID of the removed object
+         * @param obj
+         *            the removed object
+         */
+        public void removed(String id, X obj);
+
+    }
+
+    /**
+     * Secondary index on an {@link ObjectRegistry}, containing all objects of a given type. Safe
+     * to be read from any {@link Thread}.
+     * 
+     * @param <X>
+     *            the type of objects in the index
+     */
+    public static class TypeIndex<X> {
+
+        private final Class<X> type;
+        private final Map<String, X> objects = new ConcurrentHashMap<>();
+        private final List<IndexListener<? super X>> listeners = new CopyOnWriteArrayList<>();
+
+        private TypeIndex(Class<X> type) {
+            this.type = type;
+        }
+
+        /**
+         * @return a snapshot of all objects currently in the index.
+         */
+        public Collection<X> getAll() {
+            return new ArrayList<>(objects.values());
+        }
+
+        /**
+         * @return the number of objects currently in the index.
+         */
+        public int size() {
+            return objects.size();
+        }
+
+        /**
+         * @param listener
+         *            the {@link IndexListener} to notify about future changes.
+         */
+        public void addListener(IndexListener<? super X> listener) {
+            listeners.add(listener);
+        }
+
+        /**
+         * @param listener
+         *            the {@link IndexListener} to remove.
+         */
+        public void removeListener(IndexListener<? super X> listener) {
+            listeners.remove(listener);
+        }
+
+        private void added(String id, Object obj) {
+            if (!type.isInstance(obj)) {
+                return;
+            }
+
+            X object = type.cast(obj);
+            if (objects.put(id, object) == null) {
+                for (IndexListener<? super X> listener : listeners) {
+                    listener.added(id, object);
+                }
+            }
+        }
+
+        private void removed(String id, Object obj) {
+            if (!type.isInstance(obj)) {
+                return;
+            }
+
+            X object = type.cast(obj);
+            if (objects.remove(id) != null) {
+                for (IndexListener<? super X> listener : listeners) {
+                    listener.removed(id, object);
+                }
+            }
+        }
+
     }
 }
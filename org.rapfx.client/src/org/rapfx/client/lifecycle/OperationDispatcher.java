@@ -3,7 +3,10 @@
  */
 package org.rapfx.client.lifecycle;
 
+import java.util.ArrayList;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -29,6 +32,22 @@ public class OperationDispatcher {
      */
     private final LifeCycle lifecycle;
 
+    /**
+     * Number of {@link RemoteObject}s created through this {@link OperationDispatcher}.
+     */
+    private final AtomicLong created = new AtomicLong();
+
+    /**
+     * Number of {@link RemoteObject}s destroyed through this {@link OperationDispatcher}, including
+     * children destroyed along with their parents.
+     */
+    private final AtomicLong destroyed = new AtomicLong();
+
+    /**
+     * Optional {@link SpeculativeStage} informed about created objects.
+     */
+    private volatile SpeculativeStage speculativeStage;
+
     public OperationDispatcher(LifeCycle lifecycle) {
         this.lifecycle = lifecycle;
     }
@@ -56,10 +75,22 @@ public class OperationDispatcher {
             RemoteObject object = handler.create(target, properties);
             lifecycle.getObjectRegistry().set(target, object);
             object.initialize(handler, target, properties);
+            created.incrementAndGet();
+
+            SpeculativeStage stage = speculativeStage;
+            if (stage != null) {
+                stage.created((CreateOperation) op, object);
+            }
             return true;
         } else {
             RemoteObject object = lifecycle.getObjectRegistry().get(target);
 
+            if (object == null && op instanceof DestroyOperation) {
+                // already destroyed along with its parent.
+                log.debug("object " + target + " already destroyed");
+                return true;
+            }
+
             if (object == null) {
                 log.warn("object " + target + " unkown (" + op + ")!");
                 return false;
@@ -78,11 +109,128 @@ public class OperationDispatcher {
                 return handler.notify(object, ((NotifyOperation) op).getEvent(),
                         ((NotifyOperation) op).getProperties());
             } else if (op instanceof DestroyOperation) {
-                handler.destroy(object);
-                lifecycle.getObjectRegistry().remove(target);
+                destroy(object);
                 return true;
             }
         }
         throw new IllegalStateException("unknown operation " + op);
     }
+
+    /**
+     * Destroys the given {@link RemoteObject} and all of its children (see
+     * {@link RemoteObject#getChildIds()}), children first. Each object is removed from the
+     * registry, destroyed through its {@link TypeHandler} and disposed.
+     * 
+     * @param object
+     *            the {@link RemoteObject} to destroy
+     */
+    private void destroy(RemoteObject object) {
+        ObjectRegistry<RemoteObject> registry = lifecycle.getObjectRegistry();
+
+        // remove first, so that the object is visited only once even if ownership is cyclic.
+        registry.remove(object.getObjectId());
+
+        // copy, as children detach themselves from their parent while being disposed.
+        for (String childId : new ArrayList<>(object.getChildIds())) {
+            RemoteObject child = registry.get(childId);
+            if (child != null) {
+                destroy(child);
+            }
+        }
+
+        try {
+            object.getTypeHandler().destroy(object);
+            object.dispose();
+        } catch (Exception e) {
+            log.error("error destroying " + object, e);
+        }
+
+        destroyed.incrementAndGet();
+    }
+
+    /**
+     * Sets the {@link SpeculativeStage} to inform about created objects.
+     * 
+     * @param stage
+     *            the {@link SpeculativeStage} to use, or <code>null</code> to disable speculation.
+     */
+    public void setSpeculativeStage(SpeculativeStage stage) {
+        this.speculativeStage = stage;
+    }
+
+    /**
+     * @return the current {@link SpeculativeStage}, or <code>null</code> if disabled.
+     */
+    public SpeculativeStage getSpeculativeStage() {
+        return speculativeStage;
+    }
+
+    /**
+     * Runs pending speculative work of the {@link SpeculativeStage}, if any. Should be called
+     * when there are no more {@link Operation}s to dispatch.
+     * 
+     * @param deadline
+     *            the {@link System#nanoTime()} by which to stop working.
+     * @return <code>true</code> if there is speculative work left, <code>false</code> otherwise.
+     */
+    public boolean speculate(long deadline) {
+        SpeculativeStage stage = speculativeStage;
+        return stage != null && stage.run(deadline);
+    }
+
+    /**
+     * @return the number of {@link RemoteObject}s created so far.
+     */
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * @return the number of {@link RemoteObject}s destroyed so far.
+     */
+    public long getDestroyedCount() {
+        return destroyed.get();
+    }
+
+    /**
+     * @return the number of live {@link RemoteObject}s per type (simple class name).
+     */
+    public Map<String, Integer> getLiveObjectCounts() {
+        Map<String, Integer> result = new TreeMap<>();
+        for (Map.Entry<String, RemoteObject> entry : lifecycle.getObjectRegistry().getAll()) {
+            String type = entry.getValue().getClass().getSimpleName();
+            Integer count = result.get(type);
+            result.put(type, count == null ? 1 : count + 1);
+        }
+        return result;
+    }
+
+    /**
+     * Performs work ahead of time, based on the objects the server creates, for example preparing
+     * answers to requests the server is known to send next. Speculative work must never change the
+     * outcome of dispatching, only its speed.
+     */
+    public interface SpeculativeStage {
+
+        /**
+         * Called after an object has been created and initialized. Implementations should only
+         * remember what to do, and do the actual work in {@link #run(long)}.
+         * 
+         * @param op
+         *            the {@link CreateOperation} that created the object
+         * @param object
+         *            the created {@link RemoteObject}
+         */
+        public void created(CreateOperation op, RemoteObject object);
+
+        /**
+         * Performs pending speculative work, off the critical path of dispatching.
+         * 
+         * @param deadline
+         *            the {@link System#nanoTime()} by which to stop working.
+         * @return <code>true</code> if there is work left, <code>false</code> otherwise.
+         */
+        public boolean run(long deadline);
+
+    }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) Markus Duft <markus.duft@salomon.at>
+ */
+package org.rapfx.client.lifecycle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.rapfx.client.protocol.Message;
+import org.rapfx.client.protocol.types.Header;
+import org.rapfx.client.protocol.types.Operation;
+
+/**
+ * Holds the {@link Operation}s waiting to be sent to the server in two lanes. {@link Lane#URGENT}
+ * {@link Operation}s (user actions the server has to react to) are sent in a minimal
+ * {@link Message} as soon as possible, {@link Lane#BACKGROUND} {@link Operation}s (property
+ * synchronization) are batched.
+ */
+class OutboundQueue {
+
+    /**
+     * The lanes of the {@link OutboundQueue}.
+     */
+    enum Lane {
+        URGENT, BACKGROUND
+    }
+
+    /**
+     * {@link Header}s that go with the next {@link Message}, regardless of the lane.
+     */
+    private final List<Header> headers = new ArrayList<>();
+
+    private Message urgent;
+    private Message background;
+
+    /**
+     * @param header
+     *            a {@link Header} to send along with the next {@link Message}.
+     */
+    void addHeader(Header header) {
+        headers.add(header);
+    }
+
+    /**
+     * Adds {@link Operation}s to the given lane, merging them into pending {@link Operation}s where
+     * possible (see {@link Message#mergeOperation(Operation)}).
+     * 
+     * @param lane
+     *            the lane to add to
+     * @param ops
+     *            the {@link Operation}s to add
+     */
+    void add(Lane lane, Operation... ops) {
+        Message target;
+        if (lane == Lane.URGENT) {
+            if (urgent == null) {
+                urgent = new Message();
+            }
+            target = urgent;
+        } else {
+            if (background == null) {
+                background = new Message();
+            }
+            target = background;
+        }
+
+        for (Operation op : ops) {
+            target.mergeOperation(op);
+        }
+    }
+
+    /**
+     * @return whether there are no {@link Operation}s waiting in any lane.
+     */
+    boolean isEmpty() {
+        return urgent == null && background == null;
+    }
+
+    /**
+     * Takes the next {@link Message} to send from the queue.
+     * <p>
+     * If there are urgent {@link Operation}s, the {@link Message} contains those, preceded by all
+     * background {@link Operation}s that are not deferrable (see {@link Operation#isDeferrable()}),
+     * so that the server sees the current state of widgets when handling the urgent
+     * {@link Operation}s. Deferrable {@link Operation}s stay in the background lane.
+     * <p>
+     * Otherwise the {@link Message} contains all background {@link Operation}s.
+     * 
+     * @return the next {@link Message} to send, or <code>null</code> if the queue is empty.
+     */
+    Message poll() {
+        Message result;
+        if (urgent != null) {
+            result = new Message();
+            Message deferred = null;
+
+            if (background != null) {
+                for (Operation op : background.getOperations()) {
+                    if (op.isDeferrable()) {
+                        if (deferred == null) {
+                            deferred = new Message();
+                        }
+                        deferred.addOperation(op);
+                    } else {
+                        result.mergeOperation(op);
+                    }
+                }
+            }
+
+            for (Operation op : urgent.getOperations()) {
+                result.mergeOperation(op);
+            }
+
+            urgent = null;
+            background = deferred;
+        } else if (background != null) {
+            result = background;
+            background = null;
+        } else {
+            return null;
+        }
+
+        for (Header header : headers) {
+            result.addHeader(header);
+        }
+        headers.clear();
+
+        return result;
+    }
+
+}
@@ -8,6 +8,8 @@ import java.util.List;
 
 import org.rapfx.client.protocol.types.Header;
 import org.rapfx.client.protocol.types.Operation;
+import org.rapfx.client.protocol.types.operations.NotifyOperation;
+import org.rapfx.client.protocol.types.operations.SetOperation;
 
 /**
  * Describes a message received from or sent to the RAP-aware Server
@@ -72,16 +74,102 @@ public class Message {
 
     /**
      * Adds additional {@link Operation}s to the list of {@link Operation}s already registered with
-     * this {@link Message}.
+     * this {@link Message}. The {@link Operation} is appended as is, see
+     * {@link #mergeOperation(Operation)} for a compacting variant.
      * 
      * @param op
      *            the next {@link Operation} that should be sent to the server.
      */
     public void addOperation(Operation op) {
-        // TODO: optimize - squash subsequent set/event chains
         operations.add(op);
     }
 
+    /**
+     * Adds an {@link Operation} to this {@link Message}, squashing it into already registered
+     * {@link Operation}s where this does not change the outcome on the server:
+     * <ul>
+     * <li>A {@link SetOperation} is merged into the last {@link SetOperation} for the same target,
+     * the newer value of each property wins.</li>
+     * <li>A coalescable {@link NotifyOperation} (see {@link NotifyOperation#isCoalescable()}) is
+     * dropped if the same event is already pending for the same target.</li>
+     * </ul>
+     * Squashing never crosses a barrier, which is any {@link Operation} the server might handle
+     * based on the state of other objects (calls and notifications about user actions). This way
+     * the server always sees property values at least as new as they were when such an
+     * {@link Operation} was queued.
+     * 
+     * @param op
+     *            the next {@link Operation} that should be sent to the server.
+     */
+    public void mergeOperation(Operation op) {
+        if (op instanceof SetOperation) {
+            for (int i = operations.size() - 1; i >= 0; --i) {
+                Operation pending = operations.get(i);
+                if (pending instanceof SetOperation
+                        && pending.getTargetId().equals(op.getTargetId())) {
+                    SetOperation merged = ((SetOperation) pending).mergeWith((SetOperation) op);
+                    if (merged != null) {
+                        operations.set(i, merged);
+                        return;
+                    }
+                    break;
+                }
+
+                if (isBarrier(pending)) {
+                    break;
+                }
+            }
+        } else if (op instanceof NotifyOperation && ((NotifyOperation) op).isCoalescable()) {
+            String event = ((NotifyOperation) op).getEvent();
+            for (int i = operations.size() - 1; i >= 0; --i) {
+                Operation pending = operations.get(i);
+                if (pending instanceof NotifyOperation
+                        && pending.getTargetId().equals(op.getTargetId())
+                        && ((NotifyOperation) pending).getEvent().equals(event)
+                        && ((NotifyOperation) pending).isCoalescable()) {
+                    return;
+                }
+
+                if (isBarrier(pending)) {
+                    break;
+                }
+            }
+        }
+
+        operations.add(op);
+    }
+
+    /**
+     * @param op
+     *            the {@link Operation} to check
+     * @return whether other {@link Operation}s may not be moved across the given one when merging.
+     */
+    private static boolean isBarrier(Operation op) {
+        if (op instanceof SetOperation) {
+            return false;
+        }
+        if (op instanceof NotifyOperation) {
+            return !((NotifyOperation) op).isCoalescable();
+        }
+        return true;
+    }
+
+    /**
+     * Creates a copy of this {@link Message} which holds a snapshot of each {@link Operation} (see
+     * {@link Operation#snapshot()}), so that it can be handed to another {@link Thread} for
+     * sending.
+     * 
+     * @return the snapshot of this {@link Message}.
+     */
+    public Message snapshot() {
+        Message result = new Message();
+        result.headers.addAll(headers);
+        for (Operation op : operations) {
+            result.operations.add(op.snapshot());
+        }
+        return result;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
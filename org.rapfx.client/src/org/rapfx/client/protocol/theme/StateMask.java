@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) Markus Duft <markus.duft@salomon.at>
+ */
+package org.rapfx.client.protocol.theme;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.rapfx.client.widgets.jfx.impl.JfxStyleHolder.Style;
+
+/**
+ * Encodes sets of {@link Style}s and pseudo-classes as bitmasks, so that {@link ThemeProperty}
+ * requirements can be compared without creating or comparing {@link Set}s.
+ * <p>
+ * {@link Style}s are encoded by their ordinal. Pseudo-classes are assigned a bit when they are
+ * first used by a {@link ThemeProperty}; the bits are shared by all {@link Theme}s. A set
+ * containing a pseudo-class no {@link ThemeProperty} requires is encoded as {@link #UNKNOWN},
+ * which never matches any requirement.
+ */
+public final class StateMask {
+
+    /**
+     * Mask of a set of pseudo-classes containing a pseudo-class unknown to all {@link Theme}s.
+     */
+    public static final long UNKNOWN = Long.MIN_VALUE;
+
+    /**
+     * The highest bit is reserved for {@link #UNKNOWN}.
+     */
+    private static final int MAX_PSEUDOS = 63;
+
+    private static final Style[] STYLES = Style.values();
+
+    private static final Map<String, Long> pseudoBits = new ConcurrentHashMap<>();
+
+    /**
+     * Names of the registered pseudo-classes by their bit index.
+     */
+    private static final String[] pseudoNames = new String[MAX_PSEUDOS];
+
+    static {
+        if (STYLES.length > 64) {
+            throw new IllegalStateException("too many styles to encode as bitmask");
+        }
+    }
+
+    private StateMask() {
+    }
+
+    /**
+     * @param styles
+     *            the {@link Style}s to encode, may be <code>null</code>.
+     * @return the bitmask for the given {@link Style}s.
+     */
+    public static long ofStyles(Set<Style> styles) {
+        long mask = 0;
+        if (styles != null) {
+            for (Style style : styles) {
+                mask |= ofStyle(style);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @param style
+     *            the {@link Style} to encode.
+     * @return the bitmask for the given {@link Style}.
+     */
+    public static long ofStyle(Style style) {
+        return 1L << style.ordinal();
+    }
+
+    /**
+     * @param pseudos
+     *            the pseudo-classes to encode, may be <code>null</code>.
+     * @return the bitmask for the given pseudo-classes, or {@link #UNKNOWN} if any of them is not
+     *         required by any {@link ThemeProperty}.
+     */
+    public static long ofPseudos(Set<String> pseudos) {
+        long mask = 0;
+        if (pseudos != null) {
+            for (String pseudo : pseudos) {
+                Long bit = pseudoBits.get(pseudo);
+                if (bit == null) {
+                    return UNKNOWN;
+                }
+                mask |= bit;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Encodes the given pseudo-classes, assigning bits to pseudo-classes not seen before.
+     * 
+     * @param pseudos
+     *            the pseudo-classes to encode, may be <code>null</code>.
+     * @return the bitmask for the given pseudo-classes.
+     */
+    public static long internPseudos(Set<String> pseudos) {
+        long mask = 0;
+        if (pseudos != null) {
+            for (String pseudo : pseudos) {
+                mask |= internPseudo(pseudo);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Encodes the given pseudo-class, assigning a bit if it has not been seen before.
+     * 
+     * @param pseudo
+     *            the pseudo-class to encode, e.g. ":hover".
+     * @return the bitmask for the given pseudo-class.
+     */
+    public static long internPseudo(String pseudo) {
+        Long bit = pseudoBits.get(pseudo);
+        if (bit == null) {
+            bit = register(pseudo);
+        }
+        return bit;
+    }
+
+    private static synchronized Long register(String pseudo) {
+        Long bit = pseudoBits.get(pseudo);
+        if (bit == null) {
+            int index = pseudoBits.size();
+            if (index >= MAX_PSEUDOS) {
+                throw new IllegalStateException("too many pseudo-classes, cannot encode " + pseudo);
+            }
+            bit = 1L << index;
+            pseudoNames[index] = pseudo;
+            pseudoBits.put(pseudo, bit);
+        }
+        return bit;
+    }
+
+    /**
+     * @param mask
+     *            a bitmask of {@link Style}s
+     * @return the {@link Style}s contained in the given bitmask.
+     */
+    public static EnumSet<Style> toStyles(long mask) {
+        EnumSet<Style> result = EnumSet.noneOf(Style.class);
+        for (Style style : STYLES) {
+            if ((mask & ofStyle(style)) != 0) {
+                result.add(style);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param mask
+     *            a bitmask of pseudo-classes
+     * @return the pseudo-classes contained in the given bitmask, sorted by name.
+     */
+    public static SortedSet<String> toPseudos(long mask) {
+        SortedSet<String> result = new TreeSet<>();
+        for (int i = 0; i < MAX_PSEUDOS; ++i) {
+            if ((mask & (1L << i)) != 0 && pseudoNames[i] != null) {
+                result.add(pseudoNames[i]);
+            }
+        }
+        return result;
+    }
+
+}
@@ -3,6 +3,9 @@
  */
 package org.rapfx.client.protocol.theme;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.rapfx.client.transport.http.gson.serialization.ThemeMarshaller;
 
 /**
@@ -14,6 +17,12 @@ public class Theme {
     private final ThemeValues values;
     private final ThemeData data;
 
+    /**
+     * All {@link ThemeClass}es of this {@link Theme} and its fallbacks, with the fallback chain
+     * already resolved. Built on first lookup, dropped when the fallback changes.
+     */
+    private volatile Map<String, ThemeClass> resolved;
+
     /**
      * Creates a new {@link Theme} with the given values and data. The {@link ThemeData} will use
      * the {@link ThemeValues} to resolve named attribute values.
@@ -39,6 +48,7 @@ public class Theme {
      */
     public void setFallback(Theme other) {
         this.fallback = other;
+        this.resolved = null;
     }
 
     /**
@@ -59,6 +69,13 @@ public class Theme {
         return values;
     }
 
+    /**
+     * @return the {@link ThemeData} holding all {@link ThemeClass}es of this {@link Theme}
+     */
+    ThemeData getData() {
+        return data;
+    }
+
     /**
      * Looks up the {@link ThemeClass} with the given name. If not found directly, it is looked up
      * using the fallback {@link Theme} (see {@link #setFallback(Theme)}).
@@ -68,9 +85,26 @@ public class Theme {
      * @return the
      */
     public ThemeClass getThemeClass(String name) {
-        ThemeClass result = data.getThemeClass(name);
+        Map<String, ThemeClass> current = resolved;
+        if (current == null) {
+            current = resolve();
+        }
+        return current.get(name);
+    }
+
+    /**
+     * @return all {@link ThemeClass}es of this {@link Theme}, overriding the ones of the fallback
+     *         {@link Theme}s.
+     */
+    private synchronized Map<String, ThemeClass> resolve() {
+        Map<String, ThemeClass> result = resolved;
         if (result == null) {
-            result = fallback.getThemeClass(name);
+            result = new HashMap<>();
+            if (fallback != null) {
+                result.putAll(fallback.resolve());
+            }
+            result.putAll(data.getThemeClasses());
+            resolved = result;
         }
         return result;
     }
@@ -4,7 +4,9 @@
 package org.rapfx.client.protocol.theme;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -27,6 +29,12 @@ public class ThemeClass {
     private final Map<String, List<ThemeProperty>> properties = new TreeMap<>();
     private final ThemeData data;
 
+    /**
+     * Resolution index for each property, built from {@link #properties} on first lookup (or
+     * through {@link #buildIndex()}) and dropped on modification.
+     */
+    private volatile Map<String, PropertyIndex> index;
+
     /**
      * Creates a new {@link ThemeClass} with the given name, using the given {@link ThemeData} as
      * source for property values
@@ -49,6 +57,9 @@ public class ThemeClass {
      *            the requested {@link ThemeProperty}s name
      * @param styles
      *            the required styles for the {@link ThemeProperty}
+     * @param relevantStyles
+     *            the styles taken into account, <code>null</code> or empty to require exactly the
+     *            given styles.
      * @param pseudos
      *            the required pseudo classes for the {@link ThemeProperty}
      * @return the {@link ThemeProperty} that fulfills all criteria, or <code>null</code> if none
@@ -56,30 +67,66 @@ public class ThemeClass {
      */
     public ThemeProperty findProperty(String name, Set<Style> styles, Set<Style> relevantStyles,
             Set<String> pseudos) {
-        List<ThemeProperty> props = properties.get(name);
-        if (props == null || props.isEmpty()) {
-            return null;
+        return findProperty(name, StateMask.ofStyles(styles), StateMask.ofStyles(relevantStyles),
+                StateMask.ofPseudos(pseudos));
+    }
+
+    /**
+     * Looks up a certain property in this {@link ThemeClass}, see
+     * {@link #findProperty(String, Set, Set, Set)}. All criteria are given as {@link StateMask}s,
+     * so the lookup does not allocate.
+     * 
+     * @param name
+     *            the requested {@link ThemeProperty}s name
+     * @param styles
+     *            the required styles for the {@link ThemeProperty}
+     * @param relevantStyles
+     *            the styles taken into account, 0 to require exactly the given styles.
+     * @param pseudos
+     *            the required pseudo classes for the {@link ThemeProperty}
+     * @return the {@link ThemeProperty} that fulfills all criteria, or <code>null</code> if none
+     *         was found
+     */
+    public ThemeProperty findProperty(String name, long styles, long relevantStyles, long pseudos) {
+        Map<String, PropertyIndex> current = index;
+        if (current == null) {
+            current = buildIndex();
         }
 
-        for (ThemeProperty prop : props) {
-            if (prop.matches(styles, relevantStyles, pseudos)) {
-                return prop;
-            }
+        PropertyIndex props = current.get(name);
+        if (props == null) {
+            return null;
         }
-        return null;
+        return props.find(styles, relevantStyles, pseudos);
     }
 
     /**
      * Finds a property with the given name that has no style and pseudo-class requirements (see
-     * {@link #findProperty(String, Set, Set)}
+     * {@link #findProperty(String, Set, Set, Set)}
      * 
      * @param name
      *            the requested {@link ThemeProperty}s name.
      * @return the {@link ThemeProperty} if found, otherwise <code>null</code>
      */
     public ThemeProperty findProperty(String name) {
-        return findProperty(name, Collections.<Style> emptySet(), Collections.<Style> emptySet(),
-                Collections.<String> emptySet());
+        return findProperty(name, 0, 0, 0);
+    }
+
+    /**
+     * Builds the resolution index for all properties, so that lookups don't have to.
+     * 
+     * @return the built index.
+     */
+    synchronized Map<String, PropertyIndex> buildIndex() {
+        Map<String, PropertyIndex> result = index;
+        if (result == null) {
+            result = new HashMap<>();
+            for (Map.Entry<String, List<ThemeProperty>> entry : properties.entrySet()) {
+                result.put(entry.getKey(), new PropertyIndex(entry.getValue()));
+            }
+            index = result;
+        }
+        return result;
     }
 
     /**
@@ -89,21 +136,34 @@ public class ThemeClass {
      * @param propertyName
      *            the name of the {@link ThemeProperty}
      * @param styles
-     *            the required styles for the {@link ThemeProperty}
+     *            the {@link StateMask} of the required styles for the {@link ThemeProperty}
      * @param pseudos
-     *            the required pseudo-classes for the {@link ThemeProperty}
+     *            the {@link StateMask} of the required pseudo-classes for the
+     *            {@link ThemeProperty}
      * @param valueId
      *            the ID of the named value used to lookup the actual value from {@link ThemeValues}
      */
-    void setProperty(String propertyName, Set<Style> styles, Set<String> pseudos, String valueId) {
-        ThemeProperty prop = findProperty(propertyName, styles, null, pseudos);
+    synchronized void setProperty(String propertyName, long styles, long pseudos, String valueId) {
+        ThemeProperty prop = null;
+        List<ThemeProperty> existing = properties.get(propertyName);
+        if (existing != null) {
+            for (ThemeProperty candidate : existing) {
+                if (candidate.matches(styles, 0, pseudos)) {
+                    prop = candidate;
+                    break;
+                }
+            }
+        }
 
         if (prop == null) {
             prop = new ThemeProperty(data, propertyName, styles, pseudos);
             prop.setValueId(valueId);
 
-            log.trace("cls=" + className + ", prop=" + propertyName + ", styles=" + styles
-                    + ", pseudos=" + pseudos + ", vId=" + valueId);
+            if (log.isTraceEnabled()) {
+                log.trace("cls=" + className + ", prop=" + propertyName + ", styles="
+                        + StateMask.toStyles(styles) + ", pseudos=" + StateMask.toPseudos(pseudos)
+                        + ", vId=" + valueId);
+            }
 
             List<ThemeProperty> props = properties.get(propertyName);
             if (props == null) {
@@ -112,11 +172,19 @@ public class ThemeClass {
             }
 
             props.add(prop);
+            index = null;
         } else {
             prop.setValueId(valueId);
         }
     }
 
+    /**
+     * @return all {@link ThemeProperty}s by name, in declaration order.
+     */
+    Map<String, List<ThemeProperty>> getProperties() {
+        return properties;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder(className);
@@ -128,4 +196,88 @@ public class ThemeClass {
         return builder.toString();
     }
 
+    /**
+     * Resolution index for all variants of a single property. Variants are grouped by their
+     * required pseudo-classes, which always have to match exactly, and the group for a lookup is
+     * found through an open addressing hash table. Within a group, variants keep their declaration
+     * order, which decides between multiple matches.
+     */
+    static final class PropertyIndex {
+
+        /**
+         * Marks an unused slot in {@link #tableKeys}, never a valid pseudo-class mask.
+         */
+        private static final long FREE = StateMask.UNKNOWN;
+
+        private final ThemeProperty[] variants;
+
+        private final long[] tableKeys;
+        private final int[] tableStart;
+        private final int[] tableEnd;
+
+        PropertyIndex(List<ThemeProperty> props) {
+            ThemeProperty[] sorted = props.toArray(new ThemeProperty[props.size()]);
+
+            // stable, so that the declaration order within a group is kept.
+            Arrays.sort(sorted, new Comparator<ThemeProperty>() {
+                @Override
+                public int compare(ThemeProperty o1, ThemeProperty o2) {
+                    return Long.compare(o1.getPseudoMask(), o2.getPseudoMask());
+                }
+            });
+
+            variants = sorted;
+
+            int capacity = Integer.highestOneBit(Math.max(1, sorted.length) * 2) * 2;
+            tableKeys = new long[capacity];
+            tableStart = new int[capacity];
+            tableEnd = new int[capacity];
+            Arrays.fill(tableKeys, FREE);
+
+            int i = 0;
+            while (i < sorted.length) {
+                long pseudo = sorted[i].getPseudoMask();
+                int end = i + 1;
+                while (end < sorted.length && sorted[end].getPseudoMask() == pseudo) {
+                    end++;
+                }
+
+                int slot = slot(pseudo);
+                tableKeys[slot] = pseudo;
+                tableStart[slot] = i;
+                tableEnd[slot] = end;
+                i = end;
+            }
+        }
+
+        ThemeProperty find(long styles, long relevantStyles, long pseudos) {
+            int slot = slot(pseudos);
+            if (tableKeys[slot] == FREE) {
+                return null;
+            }
+
+            for (int i = tableStart[slot]; i < tableEnd[slot]; ++i) {
+                if (variants[i].matches(styles, relevantStyles, pseudos)) {
+                    return variants[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the slot containing the given pseudo-class mask, or the free slot where it
+         *         would be inserted.
+         */
+        private int slot(long pseudos) {
+            int mask = tableKeys.length - 1;
+            long h = pseudos * 0x9E3779B97F4A7C15L;
+            int slot = (int) (h ^ (h >>> 32)) & mask;
+            while (tableKeys[slot] != FREE && tableKeys[slot] != pseudos) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+    }
+
 }
@@ -57,6 +57,28 @@ public class ThemeData {
      */
     public void addData(String className, String propertyName, Set<Style> styles,
             Set<String> pseudos, String valueId) {
+        addData(className, propertyName, StateMask.ofStyles(styles),
+                StateMask.internPseudos(pseudos), valueId);
+    }
+
+    /**
+     * Adds a {@link ThemeProperty} to this {@link ThemeData}, see
+     * {@link #addData(String, String, Set, Set, String)}. The requirements are given as
+     * {@link StateMask}s.
+     * 
+     * @param className
+     *            the name of the {@link ThemeClass}
+     * @param propertyName
+     *            the name of the {@link ThemeProperty}
+     * @param styles
+     *            the {@link StateMask} of the required styles for theme'd controls
+     * @param pseudos
+     *            the {@link StateMask} of the required pseudo-classes for the theme's controls
+     * @param valueId
+     *            the ID of the value, used for lookup in a {@link ThemeValues} instance.
+     */
+    public void addData(String className, String propertyName, long styles, long pseudos,
+            String valueId) {
         ThemeClass cls = classes.get(className);
         if (cls == null) {
             cls = new ThemeClass(this, className);
@@ -78,6 +100,23 @@ public class ThemeData {
         return classes.get(name);
     }
 
+    /**
+     * Builds the resolution indexes of all {@link ThemeClass}es, so that the first lookups don't
+     * have to. Should be called once all data has been added.
+     */
+    public void buildIndex() {
+        for (ThemeClass cls : classes.values()) {
+            cls.buildIndex();
+        }
+    }
+
+    /**
+     * @return all {@link ThemeClass}es by their name.
+     */
+    Map<String, ThemeClass> getThemeClasses() {
+        return classes;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder("ThemeData {");
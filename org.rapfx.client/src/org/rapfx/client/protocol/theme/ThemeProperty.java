@@ -3,9 +3,6 @@
  */
 package org.rapfx.client.protocol.theme;
 
-import java.util.Set;
-import java.util.TreeSet;
-
 import org.rapfx.client.widgets.jfx.impl.JfxStyleHolder.Style;
 
 /**
@@ -27,42 +24,63 @@ public class ThemeProperty {
     private String valueId;
     private final String name;
     private final ThemeData data;
-    private final Set<Style> requiredStyles;
-    private final Set<String> requiredPseudos;
 
-    ThemeProperty(ThemeData data, String name, Set<Style> requiredStyles,
-            Set<String> requiredPseudos) {
+    /**
+     * {@link StateMask}s of the required styles and pseudo-classes.
+     */
+    private final long styleMask;
+    private final long pseudoMask;
+
+    ThemeProperty(ThemeData data, String name, long styleMask, long pseudoMask) {
         this.name = name;
         this.data = data;
-        this.requiredStyles = requiredStyles;
-        this.requiredPseudos = requiredPseudos;
+        this.styleMask = styleMask;
+        this.pseudoMask = pseudoMask;
     }
 
     /**
-     * Checks whether this {@link ThemeProperty} matches all required styles and states.
+     * Checks whether this {@link ThemeProperty} matches all required styles and states. All
+     * arguments are {@link StateMask}s.
      * 
      * @param styles
      *            the required styles
+     * @param relevantStyles
+     *            the styles taken into account, 0 to require exactly the given styles.
      * @param pseudoClasses
-     *            the requires states
+     *            the required states
      * @return whether this {@link ThemeProperty} applies
      */
-    boolean matches(Set<Style> styles, Set<Style> relevantStyles, Set<String> pseudoClasses) {
-        if (relevantStyles == null || relevantStyles.isEmpty()) {
-            return requiredStyles.equals(styles) && requiredPseudos.equals(pseudoClasses);
-        } else {
-            if (!requiredPseudos.equals(pseudoClasses)) {
-                return false;
-            }
-
-            if (requiredStyles.isEmpty() && (styles == null || styles.isEmpty())) {
-                return true;
-            }
-
-            Set<Style> retained = new TreeSet<>(requiredStyles);
-            retained.retainAll(relevantStyles);
-            return retained.equals(styles);
+    boolean matches(long styles, long relevantStyles, long pseudoClasses) {
+        if (pseudoMask != pseudoClasses) {
+            return false;
+        }
+
+        if (relevantStyles == 0) {
+            return styleMask == styles;
         }
+
+        return (styleMask == 0 && styles == 0) || (styleMask & relevantStyles) == styles;
+    }
+
+    /**
+     * @return the {@link StateMask} of the required styles.
+     */
+    long getStyleMask() {
+        return styleMask;
+    }
+
+    /**
+     * @return the {@link StateMask} of the required pseudo-classes.
+     */
+    long getPseudoMask() {
+        return pseudoMask;
+    }
+
+    /**
+     * @return the internal values ID used for lookup in the {@link ThemeValues}.
+     */
+    String getValueId() {
+        return valueId;
     }
 
     /**
@@ -111,7 +129,8 @@ public class ThemeProperty {
 
     @Override
     public String toString() {
-        return name + "[" + requiredStyles + requiredPseudos + "](" + valueId + ")";
+        return name + "[" + StateMask.toStyles(styleMask) + StateMask.toPseudos(pseudoMask) + "]("
+                + valueId + ")";
     }
 
 }
@@ -0,0 +1,434 @@
+/*
+ * Copyright (c) Markus Duft <markus.duft@salomon.at>
+ */
+package org.rapfx.client.protocol.theme;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.rapfx.client.protocol.theme.ThemeValues.AnimationDefinition;
+import org.rapfx.client.protocol.theme.ThemeValues.BorderDefinition;
+import org.rapfx.client.protocol.theme.ThemeValues.ImageDefinition;
+import org.rapfx.client.widgets.jfx.impl.JfxStyleHolder.Style;
+
+/**
+ * A parsed {@link Theme} along with the information required to validate it against the server:
+ * the URL it was loaded from, the validators sent by the server (entity tag and modification
+ * time) and a fingerprint of the raw contents.
+ * <p>
+ * Snapshots can be persisted in a compact binary format, so that later sessions don't have to
+ * download and parse the theme again. Styles and pseudo-classes are stored by name, as their
+ * {@link StateMask} bits are assigned per process.
+ */
+public class ThemeSnapshot {
+
+    private static final Log log = LogFactory.getLog(ThemeSnapshot.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int MAGIC = 0x52465854; // "RFXT"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_BOOLEAN = 1;
+    private static final byte TAG_NUMBER = 2;
+    private static final byte TAG_STRING = 3;
+    private static final byte TAG_LIST = 4;
+    private static final byte TAG_MAP = 5;
+
+    private final String url;
+    private final String entityTag;
+    private final long lastModified;
+    private final String fingerprint;
+    private final Theme theme;
+
+    /**
+     * @param url
+     *            the URL the {@link Theme} was loaded from
+     * @param entityTag
+     *            the entity tag sent by the server, may be <code>null</code>
+     * @param lastModified
+     *            the modification time sent by the server, 0 if unknown
+     * @param fingerprint
+     *            a fingerprint of the raw contents of the {@link Theme}
+     * @param theme
+     *            the parsed {@link Theme}
+     */
+    public ThemeSnapshot(String url, String entityTag, long lastModified, String fingerprint,
+            Theme theme) {
+        this.url = url;
+        this.entityTag = entityTag;
+        this.lastModified = lastModified;
+        this.fingerprint = fingerprint;
+        this.theme = theme;
+    }
+
+    /**
+     * @return the URL the {@link Theme} was loaded from.
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the entity tag sent by the server, or <code>null</code> if unknown.
+     */
+    public String getEntityTag() {
+        return entityTag;
+    }
+
+    /**
+     * @return the modification time sent by the server, or 0 if unknown.
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return the fingerprint of the raw contents of the {@link Theme}.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return the parsed {@link Theme}.
+     */
+    public Theme getTheme() {
+        return theme;
+    }
+
+    /**
+     * Reads a snapshot previously written by {@link #write(File)}.
+     * 
+     * @param file
+     *            the file to read from
+     * @return the {@link ThemeSnapshot}, or <code>null</code> if the file does not exist or cannot
+     *         be read.
+     */
+    public static ThemeSnapshot read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        ByteBuffer in;
+        try {
+            // read into the heap instead of mapping the file: a mapping is only released when
+            // garbage collected, and prevents replacing the file on some platforms (Windows).
+            in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            log.debug("cannot read theme snapshot " + file, e);
+            return null;
+        }
+
+        try {
+            if (in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION) {
+                log.debug("ignoring theme snapshot of unknown format " + file);
+                return null;
+            }
+
+            String url = readString(in);
+            String entityTag = readString(in);
+            long lastModified = in.getLong();
+            String fingerprint = readString(in);
+
+            ThemeValues values = readValues(in);
+            ThemeData data = readData(in);
+            return new ThemeSnapshot(url, entityTag, lastModified, fingerprint, new Theme(values,
+                    data));
+        } catch (RuntimeException e) {
+            log.debug("cannot decode theme snapshot " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes this snapshot to the given file, replacing it atomically if it exists.
+     * 
+     * @param file
+     *            the file to write to
+     * @throws IOException
+     *             in case of an error writing the file
+     */
+    public void write(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+
+            writeString(out, url);
+            writeString(out, entityTag);
+            out.writeLong(lastModified);
+            writeString(out, fingerprint);
+
+            writeValues(out, theme.getValues());
+            writeData(out, theme.getData());
+        }
+
+        if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+            tmp.delete();
+            throw new IOException("cannot replace " + file);
+        }
+    }
+
+    private static void writeValues(DataOutputStream out, ThemeValues values) throws IOException {
+        out.writeInt(values.dimensions.size());
+        for (Map.Entry<String, Integer> entry : values.dimensions.entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+
+        writeValueMap(out, values.boxdimensions);
+
+        out.writeInt(values.images.size());
+        for (Map.Entry<String, ImageDefinition> entry : values.images.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue().name);
+            out.writeInt(entry.getValue().width);
+            out.writeInt(entry.getValue().height);
+        }
+
+        writeValueMap(out, values.gradients);
+        writeValueMap(out, values.fonts);
+        writeValueMap(out, values.colors);
+
+        out.writeInt(values.borders.size());
+        for (Map.Entry<String, BorderDefinition> entry : values.borders.entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeDouble(entry.getValue().width);
+            writeValue(out, entry.getValue().color);
+            writeString(out, entry.getValue().type);
+        }
+
+        writeValueMap(out, values.cursors);
+
+        out.writeInt(values.animations.size());
+        for (String key : values.animations.keySet()) {
+            writeString(out, key);
+        }
+
+        writeValueMap(out, values.shadows);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ThemeValues readValues(ByteBuffer in) {
+        ThemeValues values = new ThemeValues();
+
+        for (int i = in.getInt(); i > 0; --i) {
+            values.dimensions.put(readString(in), in.getInt());
+        }
+
+        for (int i = in.getInt(); i > 0; --i) {
+            values.boxdimensions.put(readString(in), (List<Double>) readValue(in));
+        }
+
+        for (int i = in.getInt(); i > 0; --i) {
+            String key = readString(in);
+            values.images.put(key, new ImageDefinition(readString(in), in.getInt(), in.getInt()));
+        }
+
+        for (int i = in.getInt(); i > 0; --i) {
+            values.gradients.put(readString(in), (Map<String, Object>) readValue(in));
+        }
+
+        for (int i = in.getInt(); i > 0; --i) {
+            values.fonts.put(readString(in), (Map<String, Object>) readValue(in));
+        }
+
+        for (int i = in.getInt(); i > 0; --i) {
+            values.colors.put(readString(in), readValue(in));
+        }
+
+        for (int i = in.getInt(); i > 0; --i) {
+            String key = readString(in);
+            BorderDefinition def = new BorderDefinition();
+            def.width = in.getDouble();
+            def.color = readValue(in);
+            def.type = readString(in);
+            values.borders.put(key, def);
+        }
+
+        for (int i = in.getInt(); i > 0; --i) {
+            values.cursors.put(readString(in), (String) readValue(in));
+        }
+
+        for (int i = in.getInt(); i > 0; --i) {
+            values.animations.put(readString(in), new AnimationDefinition());
+        }
+
+        for (int i = in.getInt(); i > 0; --i) {
+            values.shadows.put(readString(in), readValue(in));
+        }
+
+        return values;
+    }
+
+    private static void writeData(DataOutputStream out, ThemeData data) throws IOException {
+        Map<String, ThemeClass> classes = data.getThemeClasses();
+        out.writeInt(classes.size());
+        for (Map.Entry<String, ThemeClass> cls : classes.entrySet()) {
+            writeString(out, cls.getKey());
+
+            Map<String, List<ThemeProperty>> properties = cls.getValue().getProperties();
+            out.writeInt(properties.size());
+            for (Map.Entry<String, List<ThemeProperty>> property : properties.entrySet()) {
+                writeString(out, property.getKey());
+
+                out.writeInt(property.getValue().size());
+                for (ThemeProperty variant : property.getValue()) {
+                    List<String> styles = new ArrayList<>();
+                    for (Style style : StateMask.toStyles(variant.getStyleMask())) {
+                        styles.add(style.name());
+                    }
+                    writeValue(out, styles);
+                    writeValue(out, new ArrayList<>(StateMask.toPseudos(variant.getPseudoMask())));
+                    writeString(out, variant.getValueId());
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ThemeData readData(ByteBuffer in) {
+        ThemeData data = new ThemeData();
+
+        for (int classes = in.getInt(); classes > 0; --classes) {
+            String className = readString(in);
+            for (int properties = in.getInt(); properties > 0; --properties) {
+                String propertyName = readString(in);
+                for (int variants = in.getInt(); variants > 0; --variants) {
+                    long styles = 0;
+                    for (String style : (List<String>) readValue(in)) {
+                        styles |= StateMask.ofStyle(Style.valueOf(style));
+                    }
+
+                    long pseudos = 0;
+                    for (String pseudo : (List<String>) readValue(in)) {
+                        pseudos |= StateMask.internPseudo(pseudo);
+                    }
+
+                    data.addData(className, propertyName, styles, pseudos, readString(in));
+                }
+            }
+        }
+
+        data.buildIndex();
+        return data;
+    }
+
+    private static void writeValueMap(DataOutputStream out, Map<String, ?> map)
+            throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, ?> entry : map.entrySet()) {
+            writeString(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    /**
+     * Writes a value as produced by parsing JSON: <code>null</code>, {@link Boolean},
+     * {@link Number}, {@link String}, {@link List} or {@link Map}.
+     */
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Number) {
+            out.writeByte(TAG_NUMBER);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof String) {
+            out.writeByte(TAG_STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(TAG_LIST);
+            out.writeInt(list.size());
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(TAG_MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        } else {
+            throw new IllegalStateException("unsupported theme value " + value + " ("
+                    + value.getClass() + ")");
+        }
+    }
+
+    private static Object readValue(ByteBuffer in) {
+        byte tag = in.get();
+        switch (tag) {
+        case TAG_NULL:
+            return null;
+        case TAG_BOOLEAN:
+            return in.get() != 0;
+        case TAG_NUMBER:
+            return in.getDouble();
+        case TAG_STRING:
+            return readString(in);
+        case TAG_LIST:
+            int size = in.getInt();
+            List<Object> list = new ArrayList<>(size);
+            for (int i = 0; i < size; ++i) {
+                list.add(readValue(in));
+            }
+            return list;
+        case TAG_MAP:
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (int i = in.getInt(); i > 0; --i) {
+                map.put(readString(in), readValue(in));
+            }
+            return map;
+        default:
+            throw new IllegalStateException("unknown value tag " + tag);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    @Override
+    public String toString() {
+        return "ThemeSnapshot[" + url + ", etag=" + entityTag + ", lastModified=" + lastModified
+                + "]";
+    }
+
+}
@@ -3,6 +3,8 @@
  */
 package org.rapfx.client.protocol.types;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -34,6 +36,7 @@ public abstract class AbstractRemoteObject implements RemoteObject {
      * @param events
      *            the events and their enablement state.
      */
+    @RapProperty("eventEnablement")
     public void setEventEnablement(Map<String, Boolean> events) {
         if (log.isDebugEnabled()) {
             log.debug("events on " + this + ": " + events);
@@ -80,6 +83,17 @@ public abstract class AbstractRemoteObject implements RemoteObject {
         return (TypeHandler<T>) handler;
     }
 
+    @Override
+    public Collection<String> getChildIds() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void dispose() {
+        properties = null;
+        eventEnablement.clear();
+    }
+
     @Override
     public String getObjectId() {
         return targetId;
@@ -24,6 +24,27 @@ public abstract class Operation {
         return targetId;
     }
 
+    /**
+     * Creates an {@link Operation} equivalent to this one, which no longer references any live
+     * (e.g. UI toolkit owned) state and can thus safely be handed to another {@link Thread}. Has
+     * to be called in the {@link Thread} that owns the referenced state.
+     * 
+     * @return the {@link Operation} snapshot. The default implementation returns
+     *         <code>this</code>.
+     */
+    public Operation snapshot() {
+        return this;
+    }
+
+    /**
+     * @return whether this {@link Operation} only synchronizes state that is transferred with its
+     *         latest value anyway, so that it may be sent after {@link Operation}s that were
+     *         queued later. The default implementation returns <code>false</code>.
+     */
+    public boolean isDeferrable() {
+        return false;
+    }
+
     /**
      * Helper for subclass {@link #toString()} implementations that require more information to be
      * rendered.
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) Markus Duft <markus.duft@salomon.at>
+ */
+package org.rapfx.client.protocol.types;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method as target for a protocol method call, called for "call" {@link Operation}s. The
+ * arguments of the call are passed in the order they appear in the {@link Operation}.
+ * <p>
+ * Annotated methods are collected and validated by {@link ReflectiveTypeHandler} when the handler
+ * is constructed, see {@link ReflectiveTypeHandler#ReflectiveTypeHandler()}.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface RapCall {
+
+    /**
+     * @return the protocol name, for example "measureItems".
+     */
+    String value();
+
+}
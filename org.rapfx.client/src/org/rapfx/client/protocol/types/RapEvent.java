@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) Markus Duft <markus.duft@salomon.at>
+ */
+package org.rapfx.client.protocol.types;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method as handler for a protocol event, called for "notify" {@link Operation}s. The
+ * method must take exactly one argument, the properties of the event.
+ * <p>
+ * Annotated methods are collected and validated by {@link ReflectiveTypeHandler} when the handler
+ * is constructed, see {@link ReflectiveTypeHandler#ReflectiveTypeHandler()}.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface RapEvent {
+
+    /**
+     * @return the protocol name, for example "Resize".
+     */
+    String value();
+
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) Markus Duft <markus.duft@salomon.at>
+ */
+package org.rapfx.client.protocol.types;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method as setter for a protocol property, called for "set" {@link Operation}s (and
+ * "listen" for the "eventEnablement" property). The method must take exactly one argument.
+ * <p>
+ * Annotated methods are collected and validated by {@link ReflectiveTypeHandler} when the handler
+ * is constructed, see {@link ReflectiveTypeHandler#ReflectiveTypeHandler()}.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface RapProperty {
+
+    /**
+     * @return the protocol name, for example "bounds".
+     */
+    String value();
+
+}
@@ -3,11 +3,20 @@
  */
 package org.rapfx.client.protocol.types;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -28,6 +37,13 @@ import org.rapfx.client.lifecycle.LifeCycle;
  * <li>Call method (example: "storeData"): <code>storeData(?...)</code>. Arguments are extracted
  * from the protocol argument list.</li>
  * </ul>
+ * Instead of relying on the naming convention, methods can declare the protocol name they handle
+ * explicitly using {@link RapProperty}, {@link RapEvent} and {@link RapCall}. Annotated methods
+ * take precedence, and are validated when the handler is constructed, so that mistakes show up
+ * at startup rather than when the server first uses a property.
+ * <p>
+ * Methods are looked up once per implementation class and combination of name and argument types,
+ * and then called through cached {@link MethodHandle}s. Failed lookups are cached as well.
  * 
  * @param <T>
  *            the type of the "type" handled by this {@link TypeHandler}.
@@ -36,6 +52,22 @@ public abstract class ReflectiveTypeHandler<T extends RemoteObject> implements T
 
     private static final Log log = LogFactory.getLog(ReflectiveTypeHandler.class);
 
+    /**
+     * Per class cache of {@link DispatchTable}s.
+     */
+    private static final ConcurrentMap<Class<?>, DispatchTable> tables = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the handler and eagerly builds (and validates) the {@link DispatchTable} of the
+     * handled type, if it can be determined from the type argument of the handler's class.
+     */
+    protected ReflectiveTypeHandler() {
+        Class<?> type = getHandledType(getClass());
+        if (type != null) {
+            getDispatchTable(type);
+        }
+    }
+
     @Override
     public LifeCycle getLifeCycle() {
         return ApplicationGlobals.getInstance().getLifeCycle();
@@ -55,9 +87,11 @@ public abstract class ReflectiveTypeHandler<T extends RemoteObject> implements T
             argValues.add(arg.getValue());
         }
 
-        Method m = getMethod(object, null, methodName,
+        Invoker m = getInvoker(object, null, methodName,
                 argTypes.toArray(new Class<?>[argTypes.size()]));
-        invokeMethod(object, m, argValues.toArray());
+        if (m != null) {
+            invokeMethod(object, m, argValues.toArray());
+        }
 
         return true;
     }
@@ -92,8 +126,8 @@ public abstract class ReflectiveTypeHandler<T extends RemoteObject> implements T
         boolean result = true;
         for (Map.Entry<String, ?> entry : things.entrySet()) {
             Object value = entry.getValue();
-            Method m = getMethod(object, prefix, entry.getKey(), value != null ? value.getClass()
-                    : null);
+            Invoker m = getInvoker(object, prefix, entry.getKey(),
+                    value != null ? value.getClass() : null);
 
             if (m == null) {
                 result = false;
@@ -101,10 +135,7 @@ public abstract class ReflectiveTypeHandler<T extends RemoteObject> implements T
                 continue;
             }
 
-            try {
-                invokeMethod(object, m, entry.getValue());
-            } catch (Exception e) {
-                log.debug("error invoking " + m.getName() + " on " + object);
+            if (!invokeMethod(object, m, entry.getValue())) {
                 result = false;
             }
         }
@@ -112,7 +143,8 @@ public abstract class ReflectiveTypeHandler<T extends RemoteObject> implements T
     }
 
     /**
-     * Tries to invoke a method, and writes a warning if it could not. Never throws.
+     * Tries to invoke a method, and writes a warning if it could not. Never throws, except for
+     * {@link Error}s.
      * 
      * @param object
      *            the object instance to call on
@@ -120,38 +152,140 @@ public abstract class ReflectiveTypeHandler<T extends RemoteObject> implements T
      *            the method to call
      * @param arguments
      *            the arguments to pass
+     * @return whether the method was invoked successfully.
      */
-    private void invokeMethod(T object, Method m, Object... arguments) {
+    private boolean invokeMethod(T object, Invoker m, Object... arguments) {
         try {
             m.invoke(object, arguments);
-        } catch (Exception e) {
-            log.warn("error invoking method " + m.getName() + " on " + object, e);
+            return true;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            log.warn("error invoking method " + m + " on " + object, e);
+            return false;
         }
     }
 
     /**
-     * Tries to find a method on the given object that is suitable for the given (optional) prefix,
-     * name (key) and the argument types (in the given order).
+     * Finds the {@link Invoker} for the given method on the given object in the cache, or resolves
+     * it using {@link #getMethod(Class, String, Class...)}.
      * 
      * @param object
      *            the object instance to get the method from
      * @param prefix
      *            the optional prefix
      * @param key
-     *            the method to look for. this is optionally prepended with the prefix (if not
-     *            <code>null</code>; in this case the first letter of key is upper-cased)
+     *            the method to look for, see {@link #getMethod(Class, String, Class...)}
      * @param args
      *            the argument types which the target method must accept
-     * @return the found method or <code>null</code> if nothing matches
+     * @return the {@link Invoker} or <code>null</code> if nothing matches
+     */
+    private Invoker getInvoker(T object, String prefix, String key, Class<?>... args) {
+        DispatchTable table = getDispatchTable(object.getClass());
+
+        MethodKey methodKey = new MethodKey(prefix, key, args);
+        Invoker invoker = table.invokers.get(methodKey);
+        if (invoker == null) {
+            Method method = getMethod(table.getAnnotated(prefix, key), args);
+            if (method == null) {
+                method = getMethod(table.type.getMethods(), getConventionName(prefix, key), args);
+            }
+
+            invoker = Invoker.create(method);
+            table.invokers.putIfAbsent(methodKey, invoker);
+
+            if (invoker == Invoker.NONE && log.isDebugEnabled()) {
+                log.debug("cannot find " + getConventionName(prefix, key) + "("
+                        + toTypeList(args) + ") on " + object);
+            }
+        }
+
+        return invoker == Invoker.NONE ? null : invoker;
+    }
+
+    /**
+     * @param prefix
+     *            the optional prefix
+     * @param key
+     *            the protocol name
+     * @return the method name according to the naming convention: the key, optionally prepended
+     *         with the prefix (if not <code>null</code>; in this case the first letter of key is
+     *         upper-cased)
      */
-    private Method getMethod(T object, String prefix, String key, Class<?>... args) {
-        String name = prefix == null ? key : (prefix + (Character.toUpperCase(key.charAt(0))) + key
+    private static String getConventionName(String prefix, String key) {
+        return prefix == null ? key : (prefix + (Character.toUpperCase(key.charAt(0))) + key
                 .substring(1));
-        for (Method m : object.getClass().getMethods()) {
+    }
+
+    /**
+     * @param type
+     *            the type to get the {@link DispatchTable} for
+     * @return the cached {@link DispatchTable}, built on first use.
+     */
+    private static DispatchTable getDispatchTable(Class<?> type) {
+        DispatchTable table = tables.get(type);
+        if (table == null) {
+            DispatchTable newTable = new DispatchTable(type);
+            table = tables.putIfAbsent(type, newTable);
+            if (table == null) {
+                table = newTable;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Determines the type handled by the given handler class from the type argument given to its
+     * (direct) super class.
+     * 
+     * @param handlerClass
+     *            the handler's class
+     * @return the handled type, or <code>null</code> if it cannot be determined.
+     */
+    private static Class<?> getHandledType(Class<?> handlerClass) {
+        Type superType = handlerClass.getGenericSuperclass();
+        if (superType instanceof ParameterizedType) {
+            Type[] args = ((ParameterizedType) superType).getActualTypeArguments();
+            if (args.length == 1 && args[0] instanceof Class) {
+                return (Class<?>) args[0];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tries to find a method within the given candidates that accepts the given argument types
+     * (in the given order).
+     * 
+     * @param candidates
+     *            the methods to choose from
+     * @param args
+     *            the argument types which the target method must accept
+     * @return the found method or <code>null</code> if nothing matches
+     */
+    private static Method getMethod(List<Method> candidates, Class<?>... args) {
+        return getMethod(candidates.toArray(new Method[candidates.size()]), null, args);
+    }
+
+    /**
+     * Tries to find a method within the given candidates that is suitable for the given name and
+     * the argument types (in the given order).
+     * 
+     * @param candidates
+     *            the methods to choose from
+     * @param name
+     *            the method name to look for, or <code>null</code> to accept any name
+     * @param args
+     *            the argument types which the target method must accept
+     * @return the found method or <code>null</code> if nothing matches
+     */
+    private static Method getMethod(Method[] candidates, String name, Class<?>... args) {
+        for (Method m : candidates) {
             boolean ok = true;
             Class<?>[] parameterTypes = m.getParameterTypes();
 
-            if (!m.getName().equals(name) || parameterTypes.length != args.length) {
+            if ((name != null && !m.getName().equals(name))
+                    || parameterTypes.length != args.length) {
                 continue;
             }
 
@@ -166,9 +300,6 @@ public abstract class ReflectiveTypeHandler<T extends RemoteObject> implements T
                 return m;
             }
         }
-        if (log.isDebugEnabled()) {
-            log.debug("cannot find " + name + "(" + toTypeList(args) + ") on " + object);
-        }
         return null;
     }
 
@@ -192,4 +323,200 @@ public abstract class ReflectiveTypeHandler<T extends RemoteObject> implements T
 
         return builder.toString();
     }
+
+    /**
+     * Per class dispatch information: the methods annotated with {@link RapProperty},
+     * {@link RapEvent} and {@link RapCall}, and the cache of resolved {@link Invoker}s.
+     */
+    private static final class DispatchTable {
+
+        final Class<?> type;
+        final ConcurrentMap<MethodKey, Invoker> invokers = new ConcurrentHashMap<>();
+
+        private final Map<String, List<Method>> properties = new HashMap<>();
+        private final Map<String, List<Method>> events = new HashMap<>();
+        private final Map<String, List<Method>> calls = new HashMap<>();
+
+        /**
+         * Collects and validates all annotated methods of the given type.
+         * 
+         * @param type
+         *            the type to build the table for
+         * @throws IllegalStateException
+         *             if an annotation is used incorrectly.
+         */
+        DispatchTable(Class<?> type) {
+            this.type = type;
+
+            for (Method m : type.getMethods()) {
+                RapProperty property = m.getAnnotation(RapProperty.class);
+                RapEvent event = m.getAnnotation(RapEvent.class);
+                RapCall call = m.getAnnotation(RapCall.class);
+
+                int count = (property != null ? 1 : 0) + (event != null ? 1 : 0)
+                        + (call != null ? 1 : 0);
+                if (count == 0) {
+                    continue;
+                }
+                if (count > 1) {
+                    throw new IllegalStateException("conflicting protocol annotations on " + m);
+                }
+
+                if (property != null) {
+                    register(properties, property.value(), m, true);
+                } else if (event != null) {
+                    register(events, event.value(), m, true);
+                } else {
+                    register(calls, call.value(), m, false);
+                }
+            }
+        }
+
+        private static void register(Map<String, List<Method>> target, String name, Method m,
+                boolean singleArgument) {
+            if (name.isEmpty()) {
+                throw new IllegalStateException("empty protocol name on " + m);
+            }
+            if (singleArgument && m.getParameterTypes().length != 1) {
+                throw new IllegalStateException("protocol method must take exactly one argument: "
+                        + m);
+            }
+
+            List<Method> existing = target.get(name);
+            if (existing == null) {
+                existing = new ArrayList<>();
+                target.put(name, existing);
+            }
+
+            for (Method other : existing) {
+                if (Arrays.equals(other.getParameterTypes(), m.getParameterTypes())) {
+                    throw new IllegalStateException("duplicate protocol name '" + name + "' on "
+                            + m + " and " + other);
+                }
+            }
+            existing.add(m);
+        }
+
+        /**
+         * @param prefix
+         *            the prefix identifying the kind of method ("set", "on" or <code>null</code>)
+         * @param key
+         *            the protocol name
+         * @return the annotated methods for the given protocol name.
+         */
+        List<Method> getAnnotated(String prefix, String key) {
+            Map<String, List<Method>> source;
+            if (prefix == null) {
+                source = calls;
+            } else if (prefix.equals("on")) {
+                source = events;
+            } else {
+                source = properties;
+            }
+
+            List<Method> result = source.get(key);
+            return result == null ? Collections.<Method> emptyList() : result;
+        }
+    }
+
+    /**
+     * Key for cached {@link Invoker}s of a single class.
+     */
+    private static final class MethodKey {
+
+        private final String prefix;
+        private final String key;
+        private final Class<?>[] args;
+        private final int hash;
+
+        public MethodKey(String prefix, String key, Class<?>[] args) {
+            this.prefix = prefix;
+            this.key = key;
+            this.args = args;
+
+            int h = prefix == null ? 0 : prefix.hashCode();
+            h = 31 * h + key.hashCode();
+            this.hash = 31 * h + Arrays.hashCode(args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof MethodKey)) {
+                return false;
+            }
+
+            MethodKey other = (MethodKey) obj;
+            return hash == other.hash && key.equals(other.key)
+                    && (prefix == null ? other.prefix == null : prefix.equals(other.prefix))
+                    && Arrays.equals(args, other.args);
+        }
+    }
+
+    /**
+     * Calls a resolved {@link Method} through a {@link MethodHandle} taking the target object and
+     * an argument array.
+     */
+    private static final class Invoker {
+
+        /**
+         * Marker for methods that could not be resolved.
+         */
+        static final Invoker NONE = new Invoker(null, null);
+
+        private final Method method;
+        private final MethodHandle handle;
+
+        private Invoker(Method method, MethodHandle handle) {
+            this.method = method;
+            this.handle = handle;
+        }
+
+        /**
+         * @param method
+         *            the method to create an {@link Invoker} for, may be <code>null</code>
+         * @return the {@link Invoker}, or {@link #NONE} if the method is <code>null</code> or not
+         *         accessible.
+         */
+        static Invoker create(Method method) {
+            if (method == null) {
+                return NONE;
+            }
+
+            try {
+                // public methods of non-public classes are not accessible otherwise.
+                method.setAccessible(true);
+
+                int count = method.getParameterTypes().length;
+                MethodHandle handle = MethodHandles.lookup().unreflect(method)
+                        .asType(MethodType.genericMethodType(count + 1))
+                        .asSpreader(Object[].class, count);
+                return new Invoker(method, handle);
+            } catch (Exception e) {
+                log.warn("cannot access " + method, e);
+                return NONE;
+            }
+        }
+
+        /**
+         * @param object
+         *            the object to call the method on
+         * @param arguments
+         *            the arguments to pass
+         * @throws Throwable
+         *             anything thrown by the method
+         */
+        void invoke(Object object, Object... arguments) throws Throwable {
+            Object ignored = handle.invokeExact(object, arguments);
+        }
+
+        @Override
+        public String toString() {
+            return method.getName();
+        }
+    }
 }
@@ -3,6 +3,7 @@
  */
 package org.rapfx.client.protocol.types;
 
+import java.util.Collection;
 import java.util.Map;
 
 /**
@@ -31,4 +32,17 @@ public interface RemoteObject {
      */
     public <T extends RemoteObject> TypeHandler<T> getTypeHandler();
 
+    /**
+     * @return the IDs of all objects that are owned by this {@link RemoteObject}, and thus have to
+     *         be destroyed along with it.
+     */
+    public Collection<String> getChildIds();
+
+    /**
+     * Releases all resources held by this object. Called after the object has been destroyed
+     * through its {@link TypeHandler}, just before it is removed from the registry. The object is
+     * not used anymore afterwards.
+     */
+    public void dispose();
+
 }
@@ -3,7 +3,10 @@
  */
 package org.rapfx.client.protocol.types.operations;
 
+import java.util.Arrays;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 import org.rapfx.client.protocol.types.Operation;
 
@@ -12,6 +15,13 @@ import org.rapfx.client.protocol.types.Operation;
  */
 public class NotifyOperation extends Operation {
 
+    /**
+     * Events that only report a state change of their target (which is transferred by a
+     * {@link SetOperation} anyway), as opposed to events caused by user actions.
+     */
+    private static final Set<String> STATE_EVENTS = new TreeSet<>(Arrays.asList("Resize",
+            "Move", "Modify"));
+
     private final String event;
     private final Map<String, Object> properties;
 
@@ -43,6 +53,19 @@ public class NotifyOperation extends Operation {
         return properties;
     }
 
+    /**
+     * @return whether this notification only reports a state change and carries no properties, so
+     *         that repeated notifications for the same target and event can be merged into one.
+     */
+    public boolean isCoalescable() {
+        return STATE_EVENTS.contains(event) && (properties == null || properties.isEmpty());
+    }
+
+    @Override
+    public boolean isDeferrable() {
+        return isCoalescable();
+    }
+
     @Override
     public String toString() {
         return toStringWithProperties(event, properties);
@@ -4,6 +4,7 @@
 package org.rapfx.client.protocol.types.operations;
 
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.rapfx.client.protocol.types.Operation;
 
@@ -32,6 +33,42 @@ public class SetOperation extends Operation {
         return properties;
     }
 
+    /**
+     * Creates a {@link SetOperation} for the same target that carries the properties of this and
+     * the given newer {@link SetOperation}. Where both set the same property, the newer value wins.
+     * 
+     * @param newer
+     *            a {@link SetOperation} for the same target, queued after this one.
+     * @return the merged {@link SetOperation}, or <code>null</code> if the two cannot be merged.
+     */
+    public SetOperation mergeWith(SetOperation newer) {
+        if (getClass() != SetOperation.class || newer.getClass() != SetOperation.class) {
+            return null;
+        }
+
+        return new SetOperation(getTargetId(), mergeProperties(this, newer));
+    }
+
+    /**
+     * Merges the raw properties of two {@link SetOperation}s, newer values win.
+     * 
+     * @param older
+     *            the {@link SetOperation} queued first
+     * @param newer
+     *            the {@link SetOperation} queued last
+     * @return the merged properties
+     */
+    protected static Map<String, Object> mergeProperties(SetOperation older, SetOperation newer) {
+        Map<String, Object> result = new TreeMap<>();
+        if (older.properties != null) {
+            result.putAll(older.properties);
+        }
+        if (newer.properties != null) {
+            result.putAll(newer.properties);
+        }
+        return result;
+    }
+
     @Override
     public String toString() {
         return toStringWithProperties(null, properties);
@@ -4,8 +4,10 @@
 package org.rapfx.client.transport;
 
 import java.net.URL;
+import java.util.List;
 
 import org.rapfx.client.protocol.Message;
+import org.rapfx.client.protocol.types.Operation;
 
 /**
  * Describes means to communicate with the server.
@@ -21,6 +23,26 @@ public interface Transport {
      */
     public Message post(Message msg);
 
+    /**
+     * Sends a message to the Server and hands the {@link Operation}s of the response to the given
+     * {@link OperationSink} in chunks, as soon as they have been read. This allows processing of
+     * the response to start before it has been received completely.
+     * 
+     * @param msg
+     *            the {@link Message} to send to the server.
+     * @param sink
+     *            the {@link OperationSink} receiving the {@link Operation}s of the response in
+     *            order.
+     * @return the {@link Message} returned by the server, containing only the headers.
+     */
+    public Message post(Message msg, OperationSink sink);
+
+    /**
+     * @return the {@link Timing} of the last {@link #post(Message)}, or <code>null</code> if no
+     *         {@link Message} has been posted successfully yet.
+     */
+    public Timing getLastTiming();
+
     /**
      * Sends a get request to the Server and returns the response.
      * 
@@ -58,6 +80,63 @@ public interface Transport {
      */
     public RemoteFile getFile(URL from);
 
+    /**
+     * Loads a file from the given {@link URL}, unless it did not change since a previous
+     * {@link #getFile(URL)}, as indicated by the validators of the previous {@link RemoteFile}.
+     * 
+     * @param from
+     *            the {@link URL} to load the file from
+     * @param entityTag
+     *            the {@link RemoteFile#getEntityTag()} of the previous version, may be
+     *            <code>null</code>
+     * @param lastModified
+     *            the {@link RemoteFile#getLastModified()} of the previous version, may be 0
+     * @return the {@link RemoteFile} representing the file in memory, or <code>null</code> if the
+     *         file did not change.
+     */
+    public RemoteFile getFileIfModified(URL from, String entityTag, long lastModified);
+
+    /**
+     * Receives the {@link Operation}s of a response while it is being read.
+     */
+    public interface OperationSink {
+
+        /**
+         * Called from the thread reading the response for each chunk of {@link Operation}s.
+         * 
+         * @param operations
+         *            the next {@link Operation}s of the response, in order.
+         */
+        public void accept(List<Operation> operations);
+
+    }
+
+    /**
+     * Timing information about a single request to the server.
+     */
+    public interface Timing {
+
+        /**
+         * @return the time in milliseconds from starting the request until the first byte of the
+         *         response was received. This includes the time the server took to process the
+         *         request.
+         */
+        public long getRoundTripMillis();
+
+        /**
+         * @return the time in milliseconds it took to receive and parse the response after the
+         *         first byte arrived.
+         */
+        public long getTransferMillis();
+
+        /**
+         * @return the time in milliseconds the server reported to have spent processing the
+         *         request, or <code>-1</code> if the server did not report it.
+         */
+        public long getServerMillis();
+
+    }
+
     /**
      * Represents a file that was loaded from a remote server
      */
@@ -78,6 +157,18 @@ public interface Transport {
          */
         public String getCharset();
 
+        /**
+         * @return the entity tag identifying this version of the file, or <code>null</code> if
+         *         not known.
+         */
+        public String getEntityTag();
+
+        /**
+         * @return the time of the last modification of the file in milliseconds since the epoch,
+         *         or 0 if not known.
+         */
+        public long getLastModified();
+
     }
 
 }
@@ -3,9 +3,13 @@
  */
 package org.rapfx.client.transport.http.gson;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -15,10 +19,9 @@ import org.rapfx.client.protocol.types.Operation;
 import org.rapfx.client.transport.Transport;
 import org.rapfx.client.transport.http.HttpRequest;
 import org.rapfx.client.transport.http.gson.serialization.MessageMarshaller;
-import org.rapfx.client.transport.http.gson.serialization.OperationMarshaller;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * Implements a {@link Transport} for RAP server communication based on HTTP and GSON
@@ -28,28 +31,39 @@ public class HttpGsonTransport implements Transport {
     private static final Log log = LogFactory.getLog(HttpGsonTransport.class);
     private static final int TRANSPORT_READ_TIMEOUT = 120000;
     private static final int TRANSPORT_CONNECT_TIMEOUT = 10000;
+
+    /**
+     * Number of {@link Operation}s passed to an {@link OperationSink} at once.
+     */
+    private static final int SINK_CHUNK_SIZE = 50;
+
+    /**
+     * Matches the duration of a "Server-Timing" response header entry.
+     */
+    private static final Pattern SERVER_TIMING_DURATION = Pattern.compile("dur=([0-9.]+)");
+
     private final URL target;
     private String sessionId;
     private String uiSessionId;
     private long requestCounter;
-    private final Gson gson;
+    private final MessageMarshaller messageMarshaller = new MessageMarshaller();
     private final String agent;
+    private volatile Timing lastTiming;
 
     public HttpGsonTransport(URL target, String userAgent) {
         this.target = target;
         this.agent = userAgent;
 
-        GsonBuilder builder = new GsonBuilder();
-        builder.registerTypeAdapter(Message.class, new MessageMarshaller());
-        builder.registerTypeAdapter(Operation.class, new OperationMarshaller());
-
-        gson = builder.create();
-
         log.debug("initialized " + this + " for " + target);
     }
 
     @Override
-    public synchronized Message post(Message msg) {
+    public Message post(Message msg) {
+        return post(msg, null);
+    }
+
+    @Override
+    public synchronized Message post(Message msg, OperationSink sink) {
 
         if (sessionId != null && !msg.containsHeader("rwt_initialize")) {
             // fill session ID and request counter;
@@ -60,16 +74,58 @@ public class HttpGsonTransport implements Transport {
             msg.addHeader(new Header("uiSessionId", uiSessionId));
         }
 
+        long start = System.nanoTime();
         HttpRequest rq = initJsonRequest(HttpRequest.post(getTargetForSession(target)))
-                .contentType(HttpRequest.CONTENT_TYPE_JSON).send(gson.toJson(msg));
+                .contentType(HttpRequest.CONTENT_TYPE_JSON);
+        writeMessage(rq, msg);
 
-        return doRequest(rq);
+        // code() waits for the response headers to arrive.
+        rq.code();
+        long firstByte = System.nanoTime();
+
+        Message result = doRequest(rq, sink);
+        long end = System.nanoTime();
+
+        lastTiming = new HttpTiming(TimeUnit.NANOSECONDS.toMillis(firstByte - start),
+                TimeUnit.NANOSECONDS.toMillis(end - firstByte), getServerMillis(rq));
+
+        return result;
+    }
+
+    @Override
+    public Timing getLastTiming() {
+        return lastTiming;
+    }
+
+    /**
+     * Determines the server side processing time from the "Server-Timing" header of the response,
+     * summing up all reported durations.
+     * 
+     * @param rq
+     *            the request to inspect
+     * @return the processing time in milliseconds, or <code>-1</code> if not reported.
+     */
+    private static long getServerMillis(HttpRequest rq) {
+        String header = rq.header("Server-Timing");
+        if (header == null) {
+            return -1;
+        }
+
+        double total = 0;
+        boolean found = false;
+        Matcher matcher = SERVER_TIMING_DURATION.matcher(header);
+        while (matcher.find()) {
+            total += Double.parseDouble(matcher.group(1));
+            found = true;
+        }
+
+        return found ? Math.round(total) : -1;
     }
 
     @Override
     public synchronized Message get() {
         HttpRequest rq = initJsonRequest(HttpRequest.get(getTargetForSession(target)));
-        return doRequest(rq);
+        return doRequest(rq, null);
     }
 
     /**
@@ -95,9 +151,12 @@ public class HttpGsonTransport implements Transport {
     /**
      * @param rq
      *            the request to send to the server
+     * @param sink
+     *            the {@link OperationSink} to pass the response's {@link Operation}s to, may be
+     *            <code>null</code>.
      * @return the {@link Message} the resulted from the servers response, never <code>null</code>
      */
-    private Message doRequest(HttpRequest rq) {
+    private Message doRequest(HttpRequest rq, OperationSink sink) {
         if (!rq.ok()) {
             throwAppropriateError(rq);
         }
@@ -110,7 +169,7 @@ public class HttpGsonTransport implements Transport {
             throw new IllegalStateException("response has unsupported format " + rq.contentType());
         }
 
-        Message msg = gson.fromJson(rq.body(), Message.class);
+        Message msg = readMessage(rq, sink);
 
         for (Header hdr : msg.getHeaders()) {
             if (hdr.getName().equals("requestCounter")) {
@@ -123,6 +182,47 @@ public class HttpGsonTransport implements Transport {
         return msg;
     }
 
+    /**
+     * Writes the given {@link Message} directly into the request body of the given
+     * {@link HttpRequest}.
+     * 
+     * @param rq
+     *            the request to write to
+     * @param msg
+     *            the {@link Message} to write
+     */
+    private void writeMessage(HttpRequest rq, Message msg) {
+        try {
+            JsonWriter writer = new JsonWriter(rq.writer());
+            messageMarshaller.write(writer, msg);
+
+            // the request's output is closed once the response is requested.
+            writer.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to write request", e);
+        }
+    }
+
+    /**
+     * Reads the {@link Message} contained in the response body of the given {@link HttpRequest}
+     * directly from the connection's stream.
+     * 
+     * @param rq
+     *            the request to read the response of
+     * @param sink
+     *            the {@link OperationSink} to pass {@link Operation}s to while reading, may be
+     *            <code>null</code>.
+     * @return the {@link Message} read from the response body.
+     */
+    private Message readMessage(HttpRequest rq, OperationSink sink) {
+        try (JsonReader reader = new JsonReader(rq.reader())) {
+            reader.setLenient(true);
+            return messageMarshaller.read(reader, sink, SINK_CHUNK_SIZE);
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to read response", e);
+        }
+    }
+
     /**
      * find the problem with the given {@link HttpRequest} and throw an {@link Exception} with a
      * message telling as precisely as possible about the "real" problem.
@@ -134,7 +234,7 @@ public class HttpGsonTransport implements Transport {
     private void throwAppropriateError(HttpRequest rq) {
         switch (rq.code()) {
         case 403:
-            Message resp = gson.fromJson(rq.body(), Message.class);
+            Message resp = readMessage(rq, null);
             if (resp.containsHeader("error")) {
                 String error = (String) resp.getHeaderValue("error");
                 String message = (String) resp.getHeaderValue("message");
@@ -192,7 +292,72 @@ public class HttpGsonTransport implements Transport {
             throwAppropriateError(rq);
         }
 
-        return new HttpRemoteFile(rq.contentType(), rq.charset(), rq.bytes());
+        return new HttpRemoteFile(rq.contentType(), rq.charset(), rq.eTag(), rq.lastModified(),
+                rq.bytes());
+    }
+
+    @Override
+    public RemoteFile getFileIfModified(URL from, String entityTag, long lastModified) {
+        if (from == null) {
+            return null;
+        }
+
+        HttpRequest rq = HttpRequest.get(from).acceptGzipEncoding().uncompress(true)
+                .userAgent(agent).trustAllCerts().trustAllHosts();
+        if (entityTag != null) {
+            rq.ifNoneMatch(entityTag);
+        }
+        if (lastModified > 0) {
+            rq.ifModifiedSince(lastModified);
+        }
+
+        if (rq.notModified()) {
+            return null;
+        }
+
+        if (!rq.ok()) {
+            throwAppropriateError(rq);
+        }
+
+        return new HttpRemoteFile(rq.contentType(), rq.charset(), rq.eTag(), rq.lastModified(),
+                rq.bytes());
+    }
+
+    /**
+     * DTO for the {@link Timing} of a single request.
+     */
+    private static class HttpTiming implements Timing {
+
+        private final long roundTrip;
+        private final long transfer;
+        private final long server;
+
+        public HttpTiming(long roundTrip, long transfer, long server) {
+            this.roundTrip = roundTrip;
+            this.transfer = transfer;
+            this.server = server;
+        }
+
+        @Override
+        public long getRoundTripMillis() {
+            return roundTrip;
+        }
+
+        @Override
+        public long getTransferMillis() {
+            return transfer;
+        }
+
+        @Override
+        public long getServerMillis() {
+            return server;
+        }
+
+        @Override
+        public String toString() {
+            return "rtt=" + roundTrip + "ms, transfer=" + transfer + "ms, server=" + server + "ms";
+        }
+
     }
 
     /**
@@ -203,10 +368,15 @@ public class HttpGsonTransport implements Transport {
         private final byte[] bytes;
         private final String charset;
         private final String type;
+        private final String entityTag;
+        private final long lastModified;
 
-        public HttpRemoteFile(String type, String charset, byte[] bytes) {
+        public HttpRemoteFile(String type, String charset, String entityTag, long lastModified,
+                byte[] bytes) {
             this.type = type;
             this.charset = charset;
+            this.entityTag = entityTag;
+            this.lastModified = lastModified;
             this.bytes = bytes;
         }
 
@@ -225,6 +395,16 @@ public class HttpGsonTransport implements Transport {
             return charset;
         }
 
+        @Override
+        public String getEntityTag() {
+            return entityTag;
+        }
+
+        @Override
+        public long getLastModified() {
+            return lastModified;
+        }
+
     }
 
 }
@@ -3,87 +3,160 @@
  */
 package org.rapfx.client.transport.http.gson.serialization;
 
-import java.lang.reflect.Type;
-import java.util.Map.Entry;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.rapfx.client.protocol.Message;
 import org.rapfx.client.protocol.types.Header;
 import org.rapfx.client.protocol.types.Operation;
+import org.rapfx.client.transport.Transport.OperationSink;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * Responsible (GSON specific) Marshal for serializing and deserializing {@link Message} objects.
+ * Both directions are streaming, directly from a {@link JsonReader} and to a {@link JsonWriter},
+ * without building an intermediate tree of {@link JsonElement}s.
  */
-public class MessageMarshaller implements JsonSerializer<Message>, JsonDeserializer<Message> {
+public class MessageMarshaller {
 
     private static final String MEMBER_OPS = "operations";
     private static final String MEMBER_HEAD = "head";
 
-    @Override
-    public Message deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
-            throws JsonParseException {
+    private final OperationMarshaller operationMarshaller = new OperationMarshaller();
+
+    /**
+     * Reads a {@link Message} from the given {@link JsonReader}.
+     * 
+     * @param in
+     *            the {@link JsonReader} positioned at the start of the {@link Message}
+     * @return the {@link Message} read.
+     * @throws IOException
+     *             in case reading from the underlying stream fails.
+     */
+    public Message read(JsonReader in) throws IOException {
+        return read(in, null, 0);
+    }
+
+    /**
+     * Reads a {@link Message} from the given {@link JsonReader}, passing the {@link Operation}s
+     * to the given {@link OperationSink} in chunks as soon as they have been read.
+     * 
+     * @param in
+     *            the {@link JsonReader} positioned at the start of the {@link Message}
+     * @param sink
+     *            the {@link OperationSink} to pass {@link Operation}s to. If <code>null</code>,
+     *            {@link Operation}s are added to the resulting {@link Message} instead.
+     * @param chunkSize
+     *            the number of {@link Operation}s to pass to the {@link OperationSink} at once.
+     * @return the {@link Message} read, only containing headers if a {@link OperationSink} is
+     *         given.
+     * @throws IOException
+     *             in case reading from the underlying stream fails.
+     */
+    public Message read(JsonReader in, OperationSink sink, int chunkSize) throws IOException {
         Message msg = new Message();
 
-        if (json.isJsonObject()) {
-            JsonObject obj = json.getAsJsonObject();
-            if (obj.has(MEMBER_HEAD)) {
-                JsonElement head = obj.get(MEMBER_HEAD);
-                if (head.isJsonObject()) {
-                    for (Entry<String, JsonElement> entry : head.getAsJsonObject().entrySet()) {
-                        msg.addHeader(new Header(entry.getKey(), entry.getValue().getAsString()));
-                    }
-                }
-            }
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();
+            return msg;
+        }
 
-            if (obj.has(MEMBER_OPS)) {
-                JsonElement ops = obj.get(MEMBER_OPS);
-                if (ops.isJsonArray()) {
-                    for (JsonElement element : ops.getAsJsonArray()) {
-                        Operation op = context.deserialize(element, Operation.class);
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (name.equals(MEMBER_HEAD) && in.peek() == JsonToken.BEGIN_OBJECT) {
+                in.beginObject();
+                while (in.hasNext()) {
+                    String header = in.nextName();
+                    msg.addHeader(new Header(header, readHeaderValue(in, header)));
+                }
+                in.endObject();
+            } else if (name.equals(MEMBER_OPS) && in.peek() == JsonToken.BEGIN_ARRAY) {
+                in.beginArray();
+                List<Operation> chunk = new ArrayList<>();
+                while (in.hasNext()) {
+                    Operation op = operationMarshaller.read(in);
+                    if (sink == null) {
                         msg.addOperation(op);
+                        continue;
                     }
+
+                    chunk.add(op);
+                    if (chunk.size() >= chunkSize) {
+                        sink.accept(chunk);
+                        chunk = new ArrayList<>();
+                    }
+                }
+                in.endArray();
+
+                if (!chunk.isEmpty()) {
+                    sink.accept(chunk);
                 }
+            } else {
+                in.skipValue();
             }
         }
+        in.endObject();
 
         return msg;
     }
 
-    @Override
-    public JsonElement serialize(Message src, Type typeOfSrc, JsonSerializationContext context) {
-        JsonObject obj = new JsonObject();
-        JsonObject head = new JsonObject();
-        JsonArray operations = new JsonArray();
+    /**
+     * Reads the value of a {@link Header}. {@link Header} values are always represented as
+     * {@link String}s.
+     */
+    private static String readHeaderValue(JsonReader in, String header) throws IOException {
+        switch (in.peek()) {
+        case STRING:
+        case NUMBER:
+            return in.nextString();
+        case BOOLEAN:
+            return String.valueOf(in.nextBoolean());
+        default:
+            throw new IllegalStateException("illegal value type in header: " + header);
+        }
+    }
 
+    /**
+     * Writes the given {@link Message} to the given {@link JsonWriter}.
+     * 
+     * @param out
+     *            the {@link JsonWriter} to write to
+     * @param src
+     *            the {@link Message} to write
+     * @throws IOException
+     *             in case writing to the underlying stream fails.
+     */
+    public void write(JsonWriter out, Message src) throws IOException {
+        out.beginObject();
+
+        out.name(MEMBER_HEAD).beginObject();
         for (Header header : src.getHeaders()) {
             Object value = header.getValue();
+            out.name(header.getName());
             if (value instanceof String) {
-                head.add(header.getName(), new JsonPrimitive((String) value));
+                out.value((String) value);
             } else if (value instanceof Boolean) {
-                head.add(header.getName(), new JsonPrimitive((Boolean) value));
+                out.value(((Boolean) value).booleanValue());
             } else if (value instanceof Number) {
-                head.add(header.getName(), new JsonPrimitive((Number) value));
+                out.value((Number) value);
             } else {
                 throw new IllegalStateException("illegal value type in header: " + header);
             }
         }
+        out.endObject();
 
+        out.name(MEMBER_OPS).beginArray();
         for (Operation op : src.getOperations()) {
-            operations.add(context.serialize(op, Operation.class));
+            operationMarshaller.write(out, op);
         }
+        out.endArray();
 
-        obj.add(MEMBER_HEAD, head);
-        obj.add(MEMBER_OPS, operations);
-
-        return obj;
+        out.endObject();
     }
 }
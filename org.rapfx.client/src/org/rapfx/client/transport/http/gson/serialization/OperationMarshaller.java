@@ -3,9 +3,13 @@
  */
 package org.rapfx.client.transport.http.gson.serialization;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import org.rapfx.client.protocol.Message;
 import org.rapfx.client.protocol.types.Operation;
@@ -16,95 +20,235 @@ import org.rapfx.client.protocol.types.operations.ListenOperation;
 import org.rapfx.client.protocol.types.operations.NotifyOperation;
 import org.rapfx.client.protocol.types.operations.SetOperation;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * Responsible (GSON specific) Marshal for serializing and deserializing {@link Operation} objects
- * attached to {@link Message}s.
+ * attached to {@link Message}s. Both directions are streaming. Property values are read as
+ * {@link Map} ({@link LinkedHashMap}), {@link List} ({@link ArrayList}), {@link Double},
+ * {@link Boolean}, {@link String} or <code>null</code>. When writing, additionally
+ * <code>int[]</code>, <code>double[]</code>, <code>Object[]</code> and any {@link Number} are
+ * supported.
  */
-public class OperationMarshaller implements JsonSerializer<Operation>, JsonDeserializer<Operation> {
+public class OperationMarshaller {
 
-    @Override
-    public Operation deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context)
-            throws JsonParseException {
-        if (json.isJsonArray()) {
-            JsonArray data = json.getAsJsonArray();
+    /**
+     * Reads a single {@link Operation} from the given {@link JsonReader}.
+     * 
+     * @param in
+     *            the {@link JsonReader} positioned at the start of the {@link Operation}
+     * @return the {@link Operation} read.
+     * @throws IOException
+     *             in case reading from the underlying stream fails.
+     */
+    public Operation read(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_ARRAY) {
+            throw new IllegalStateException("unknown operation: " + readValue(in));
+        }
 
-            if (data.size() < 1) {
-                throw new IllegalStateException("malformed operation: " + json);
-            }
+        in.beginArray();
+        if (!in.hasNext()) {
+            throw new IllegalStateException("malformed operation: []");
+        }
 
-            String opcode = data.get(0).getAsString();
-            switch (opcode) {
-            case "create":
-                return new CreateOperation(data.get(1).getAsString(), data.get(2).getAsString(),
-                        deserializeProperties(context, data, 3));
-            case "set":
-                return new SetOperation(data.get(1).getAsString(), deserializeProperties(context,
-                        data, 2));
-            case "call":
-                return new CallOperation(data.get(1).getAsString(), data.get(2).getAsString(),
-                        deserializeProperties(context, data, 3));
-            case "listen":
-                return new ListenOperation(data.get(1).getAsString(),
-                        this.<Boolean> deserializeProperties(context, data, 2));
-            case "notify":
-                return new NotifyOperation(data.get(1).getAsString(), data.get(2).getAsString(),
-                        deserializeProperties(context, data, 3));
-            case "destroy":
-                return new DestroyOperation(data.get(1).getAsString());
-            }
+        Operation result;
+        String opcode = in.nextString();
+        switch (opcode) {
+        case "create":
+            result = new CreateOperation(in.nextString(), in.nextString(),
+                    readProperties(in));
+            break;
+        case "set":
+            result = new SetOperation(in.nextString(), readProperties(in));
+            break;
+        case "call":
+            result = new CallOperation(in.nextString(), in.nextString(), readProperties(in));
+            break;
+        case "listen":
+            result = new ListenOperation(in.nextString(), this.<Boolean> readProperties(in));
+            break;
+        case "notify":
+            result = new NotifyOperation(in.nextString(), in.nextString(), readProperties(in));
+            break;
+        case "destroy":
+            result = new DestroyOperation(in.nextString());
+            break;
+        default:
+            throw new IllegalStateException("unknown operation: " + opcode);
         }
 
-        throw new IllegalStateException("unknown operation: " + json);
+        // tolerate (and ignore) additional trailing elements.
+        while (in.hasNext()) {
+            in.skipValue();
+        }
+        in.endArray();
+
+        return result;
     }
 
     @SuppressWarnings("unchecked")
-    private <T> Map<String, T> deserializeProperties(JsonDeserializationContext context,
-            JsonArray data, int index) {
-        return (Map<String, T>) (data.size() > index ? context.deserialize(data.get(index),
-                Map.class) : Collections.emptyMap());
+    private <T> Map<String, T> readProperties(JsonReader in) throws IOException {
+        if (!in.hasNext()) {
+            return Collections.emptyMap();
+        }
+
+        Object value = readValue(in);
+        if (value == null) {
+            return Collections.emptyMap();
+        }
+        if (!(value instanceof Map)) {
+            throw new IllegalStateException("malformed operation properties: " + value);
+        }
+        return (Map<String, T>) value;
     }
 
-    @Override
-    public JsonElement serialize(Operation src, Type typeOfSrc, JsonSerializationContext context) {
-        JsonArray array = new JsonArray();
+    /**
+     * Reads an arbitrary JSON value.
+     * 
+     * @param in
+     *            the {@link JsonReader} to read from.
+     * @return the value read, see class documentation for the possible types.
+     * @throws IOException
+     *             in case reading from the underlying stream fails.
+     */
+    static Object readValue(JsonReader in) throws IOException {
+        switch (in.peek()) {
+        case BEGIN_OBJECT:
+            Map<String, Object> map = new LinkedHashMap<>();
+            in.beginObject();
+            while (in.hasNext()) {
+                map.put(in.nextName(), readValue(in));
+            }
+            in.endObject();
+            return map;
+        case BEGIN_ARRAY:
+            List<Object> list = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                list.add(readValue(in));
+            }
+            in.endArray();
+            return list;
+        case STRING:
+            return in.nextString();
+        case NUMBER:
+            return Double.valueOf(in.nextDouble());
+        case BOOLEAN:
+            return Boolean.valueOf(in.nextBoolean());
+        case NULL:
+            in.nextNull();
+            return null;
+        default:
+            throw new IllegalStateException("unexpected JSON token: " + in.peek());
+        }
+    }
+
+    /**
+     * Writes the given {@link Operation} to the given {@link JsonWriter}.
+     * 
+     * @param out
+     *            the {@link JsonWriter} to write to
+     * @param src
+     *            the {@link Operation} to write
+     * @throws IOException
+     *             in case writing to the underlying stream fails.
+     */
+    public void write(JsonWriter out, Operation src) throws IOException {
+        out.beginArray();
 
         if (src instanceof CallOperation) {
-            array.add(new JsonPrimitive("call"));
-            array.add(new JsonPrimitive(src.getTargetId()));
-            array.add(new JsonPrimitive(((CallOperation) src).getMethodName()));
-            array.add(serializeProperties(context, ((CallOperation) src).getArguments()));
+            CallOperation call = (CallOperation) src;
+            out.value("call").value(call.getTargetId()).value(call.getMethodName());
+            writeProperties(out, call.getArguments());
         } else if (src instanceof SetOperation) {
-            array.add(new JsonPrimitive("set"));
-            array.add(new JsonPrimitive(src.getTargetId()));
-            array.add(serializeProperties(context, ((SetOperation) src).getProperties()));
+            out.value("set").value(src.getTargetId());
+            writeProperties(out, ((SetOperation) src).getProperties());
         } else if (src instanceof NotifyOperation) {
-            array.add(new JsonPrimitive("notify"));
-            array.add(new JsonPrimitive(src.getTargetId()));
-            array.add(new JsonPrimitive(((NotifyOperation) src).getEvent()));
-            array.add(serializeProperties(context, ((NotifyOperation) src).getProperties()));
+            NotifyOperation notify = (NotifyOperation) src;
+            out.value("notify").value(notify.getTargetId()).value(notify.getEvent());
+            writeProperties(out, notify.getProperties());
         } else {
             throw new IllegalStateException("operation not serializable: " + src);
         }
 
-        return array;
+        out.endArray();
     }
 
-    private JsonElement serializeProperties(JsonSerializationContext context,
-            Map<String, ?> properties) {
+    private static void writeProperties(JsonWriter out, Map<String, ?> properties)
+            throws IOException {
         if (properties == null) {
-            return new JsonObject();
+            out.beginObject().endObject();
+        } else {
+            writeMap(out, properties);
+        }
+    }
+
+    /**
+     * Writes a {@link Map} as JSON object. Entries with <code>null</code> values are omitted.
+     */
+    private static void writeMap(JsonWriter out, Map<?, ?> map) throws IOException {
+        out.beginObject();
+        for (Entry<?, ?> entry : map.entrySet()) {
+            if (entry.getValue() != null) {
+                out.name(String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        }
+        out.endObject();
+    }
+
+    /**
+     * Writes an arbitrary property value.
+     * 
+     * @param out
+     *            the {@link JsonWriter} to write to.
+     * @param value
+     *            the value to write, see class documentation for the supported types.
+     * @throws IOException
+     *             in case writing to the underlying stream fails.
+     */
+    static void writeValue(JsonWriter out, Object value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else if (value instanceof String) {
+            out.value((String) value);
+        } else if (value instanceof Boolean) {
+            out.value(((Boolean) value).booleanValue());
+        } else if (value instanceof Integer || value instanceof Long) {
+            out.value(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            out.value((Number) value);
+        } else if (value instanceof int[]) {
+            out.beginArray();
+            for (int i : (int[]) value) {
+                out.value(i);
+            }
+            out.endArray();
+        } else if (value instanceof double[]) {
+            out.beginArray();
+            for (double d : (double[]) value) {
+                out.value(d);
+            }
+            out.endArray();
+        } else if (value instanceof Object[]) {
+            out.beginArray();
+            for (Object o : (Object[]) value) {
+                writeValue(out, o);
+            }
+            out.endArray();
+        } else if (value instanceof Iterable) {
+            out.beginArray();
+            for (Object o : (Iterable<?>) value) {
+                writeValue(out, o);
+            }
+            out.endArray();
+        } else if (value instanceof Map) {
+            writeMap(out, (Map<?, ?>) value);
         } else {
-            return context.serialize(properties);
+            throw new IllegalStateException("value not serializable: " + value + " ("
+                    + value.getClass() + ")");
         }
     }
 }
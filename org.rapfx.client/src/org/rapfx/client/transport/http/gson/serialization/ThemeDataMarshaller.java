@@ -6,9 +6,8 @@ package org.rapfx.client.transport.http.gson.serialization;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
 
+import org.rapfx.client.protocol.theme.StateMask;
 import org.rapfx.client.protocol.theme.ThemeData;
 import org.rapfx.client.widgets.jfx.impl.JfxStyleHolder.Style;
 
@@ -51,24 +50,26 @@ public class ThemeDataMarshaller implements JsonDeserializer<ThemeData> {
             }
         }
 
+        // lookups happen for each node created, so prepare for them once.
+        data.buildIndex();
         return data;
     }
 
-    private Set<String> getPseudoClasses(List<String> allStates) {
-        Set<String> result = new TreeSet<>();
+    private static long getPseudoClasses(List<String> allStates) {
+        long result = 0;
         for (String state : allStates) {
             if (state.startsWith(":")) {
-                result.add(state);
+                result |= StateMask.internPseudo(state);
             }
         }
         return result;
     }
 
-    private static Set<Style> getStyles(List<String> allStates) {
-        Set<Style> result = new TreeSet<>();
+    private static long getStyles(List<String> allStates) {
+        long result = 0;
         for (String state : allStates) {
             if (state.startsWith("[")) {
-                result.add(Style.valueOf(state.substring(1)));
+                result |= StateMask.ofStyle(Style.valueOf(state.substring(1)));
             }
         }
         return result;
@@ -27,7 +27,9 @@ public interface WidgetToolkit {
     public void run();
 
     /**
-     * Dispatches the given {@link Message}, possibly moving processing into another thread.
+     * Dispatches the given {@link Message}, possibly moving processing into another thread. May be
+     * called from any {@link Thread}; {@link Message}s and {@link Runnable}s passed to
+     * {@link #asyncExec(Runnable)} are processed in the order they are passed.
      * 
      * @param msg
      *            the message to process.
@@ -38,10 +40,24 @@ public interface WidgetToolkit {
      * Execute a {@link Runnable} in the context of the Toolkit. This may or may not schedule the
      * {@link Runnable} to another {@link Thread}. The {@link Runnable} is executed after the
      * specified timeout. If the method is called again with the same runnable during that time, the
-     * timeout is re-set to the given value.
+     * timeout is re-set to the given value. Implementations may cap the total delay, so that a
+     * {@link Runnable} that is requested over and over is still executed eventually.
      * 
      * @param runnable
      *            the {@link Runnable} to execute.
+     * @param millis
+     *            the timeout in milliseconds.
      */
     public void execute(Runnable runnable, int millis);
+
+    /**
+     * Execute a {@link Runnable} asynchronously in the {@link Thread} of the Toolkit (the UI
+     * thread) as soon as possible. May be called from any {@link Thread}. {@link Runnable}s are
+     * executed in the order they are passed to this method, and only after all {@link Message}s
+     * passed to {@link #dispatch(Message)} before have been processed completely.
+     * 
+     * @param runnable
+     *            the {@link Runnable} to execute.
+     */
+    public void asyncExec(Runnable runnable);
 }
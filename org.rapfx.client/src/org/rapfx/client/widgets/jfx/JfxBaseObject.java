@@ -4,15 +4,19 @@
 package org.rapfx.client.widgets.jfx;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.rapfx.client.ApplicationGlobals;
 import org.rapfx.client.lifecycle.LifeCycle;
 import org.rapfx.client.lifecycle.ObjectRegistry;
 import org.rapfx.client.protocol.theme.Theme;
 import org.rapfx.client.protocol.types.AbstractRemoteObject;
+import org.rapfx.client.protocol.types.RapProperty;
 import org.rapfx.client.protocol.types.RemoteObject;
 import org.rapfx.client.protocol.types.TypeHandler;
 import org.rapfx.client.widgets.jfx.impl.JfxStyleHolder;
@@ -24,6 +28,7 @@ import org.rapfx.client.widgets.jfx.theming.JfxStylesheet;
 public abstract class JfxBaseObject<T> extends AbstractRemoteObject {
 
     private List<String> children;
+    private Set<String> attached;
     private int tabIndex = -1;
     private T node;
     private JfxStyleHolder style;
@@ -72,6 +77,7 @@ public abstract class JfxBaseObject<T> extends AbstractRemoteObject {
      * @param children
      *            all immediate children of this object.
      */
+    @RapProperty("children")
     public void setChildren(List<String> children) {
         this.children = children;
     }
@@ -87,6 +93,51 @@ public abstract class JfxBaseObject<T> extends AbstractRemoteObject {
         return children;
     }
 
+    /**
+     * Registers an object that attached itself to this object (e.g. by setting this object as its
+     * parent), so that it is destroyed along with this object.
+     * 
+     * @param id
+     *            the ID of the attached object
+     */
+    protected void attach(String id) {
+        if (attached == null) {
+            attached = new LinkedHashSet<>();
+        }
+        attached.add(id);
+    }
+
+    /**
+     * Reverts {@link #attach(String)}.
+     * 
+     * @param id
+     *            the ID of the detached object
+     */
+    protected void detach(String id) {
+        if (attached != null) {
+            attached.remove(id);
+        }
+    }
+
+    /**
+     * @return the immediate children and all attached objects.
+     */
+    @Override
+    public Collection<String> getChildIds() {
+        Set<String> result = new LinkedHashSet<>(getChildren());
+        if (attached != null) {
+            result.addAll(attached);
+        }
+        return result;
+    }
+
+    @Override
+    public void dispose() {
+        children = null;
+        attached = null;
+        super.dispose();
+    }
+
     /**
      * @return the immediate children as {@link RemoteObject}s
      */
@@ -108,6 +159,7 @@ public abstract class JfxBaseObject<T> extends AbstractRemoteObject {
      * @param index
      *            the tab index of this control in the UI.
      */
+    @RapProperty("tabIndex")
     public void setTabIndex(Double index) {
         tabIndex = index.intValue();
     }
@@ -124,6 +176,7 @@ public abstract class JfxBaseObject<T> extends AbstractRemoteObject {
      * @param value
      *            the new style that should be applied.
      */
+    @RapProperty("style")
     public void setStyle(Object value) {
         style = JfxTypeHelper.toStyle(value);
     }
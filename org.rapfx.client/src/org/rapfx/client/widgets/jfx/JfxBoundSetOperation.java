@@ -10,11 +10,13 @@ import java.util.TreeMap;
 import javafx.beans.property.Property;
 import javafx.beans.value.ObservableValue;
 
+import org.rapfx.client.protocol.types.Operation;
 import org.rapfx.client.protocol.types.operations.SetOperation;
 
 /**
  * {@link SetOperation} that memorizes Properties, so that the values for delayed sending are
- * queried at send time, and not before.
+ * queried at send time, and not before. Before the {@link SetOperation} leaves the JavaFX
+ * Application Thread, the values are captured using {@link #snapshot()}.
  */
 public class JfxBoundSetOperation extends SetOperation {
 
@@ -49,6 +51,26 @@ public class JfxBoundSetOperation extends SetOperation {
         return result;
     }
 
+    @Override
+    public boolean isDeferrable() {
+        return true;
+    }
+
+    @Override
+    public Operation snapshot() {
+        return new SetOperation(getTargetId(), getProperties());
+    }
+
+    @Override
+    public SetOperation mergeWith(SetOperation newer) {
+        if (!(newer instanceof JfxBoundSetOperation)
+                || !targetClass.equals(((JfxBoundSetOperation) newer).targetClass)) {
+            return null;
+        }
+
+        return new JfxBoundSetOperation(targetClass, getTargetId(), mergeProperties(this, newer));
+    }
+
     private Object getConvertedValue(Object val) {
         if (targetClass.isAssignableFrom(val.getClass())) {
             return targetClass.cast(val);
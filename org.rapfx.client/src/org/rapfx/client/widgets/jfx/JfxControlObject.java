@@ -8,6 +8,7 @@ import java.util.List;
 import javafx.scene.control.Control;
 import javafx.scene.control.Labeled;
 import javafx.scene.control.Tooltip;
+import org.rapfx.client.protocol.types.RapProperty;
 
 public abstract class JfxControlObject<T extends Control> extends JfxNodeObject<T> {
 
@@ -15,10 +16,12 @@ public abstract class JfxControlObject<T extends Control> extends JfxNodeObject<
      * @param tooltip
      *            the new tooltip for the control
      */
+    @RapProperty("toolTip")
     public void setToolTip(String tooltip) {
         getNode().setTooltip(new Tooltip(tooltip));
     }
 
+    @RapProperty("font")
     public void setFont(Object raw) {
         Control node = getNode();
         if (node instanceof Labeled) {
@@ -27,6 +30,7 @@ public abstract class JfxControlObject<T extends Control> extends JfxNodeObject<
         }
     }
 
+    @RapProperty("bounds")
     public void setBounds(List<Double> raw) {
         Control node = getNode();
         node.setLayoutX(raw.get(0));
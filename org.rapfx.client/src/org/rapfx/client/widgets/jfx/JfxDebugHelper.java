@@ -5,7 +5,6 @@ package org.rapfx.client.widgets.jfx;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -39,14 +38,8 @@ public class JfxDebugHelper {
     }
 
     static List<JfxShell> traceFindShells() {
-        List<JfxShell> shells = new ArrayList<>();
-        for (Map.Entry<String, ?> entry : ApplicationGlobals.getInstance().getLifeCycle()
-                .getObjectRegistry().getAll()) {
-            if (entry.getValue() instanceof JfxShell) {
-                shells.add((JfxShell) entry.getValue());
-            }
-        }
-        return shells;
+        JfxToolkit tk = (JfxToolkit) ApplicationGlobals.getInstance().getToolkit();
+        return new ArrayList<>(tk.getShells().getAll());
     }
 
 }
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) Markus Duft <markus.duft@salomon.at>
+ */
+package org.rapfx.client.widgets.jfx;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Least recently used cache for text measurement results. RAP requests measurements for the same
+ * texts and fonts over and over, so results are kept keyed by text, requested font and wrap width.
+ * <p>
+ * The cache is bounded by a maximum number of entries and by an estimated memory footprint. Hits,
+ * misses and evictions are counted for monitoring. Only used on the JavaFX Application Thread.
+ */
+public class JfxMeasurementCache {
+
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+    private static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Rough estimate of the fixed memory cost of an entry: map entry, key and result objects.
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final LinkedHashMap<Key, int[]> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+    private long maxBytes = DEFAULT_MAX_BYTES;
+    private long bytes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param key
+     *            the {@link Key} to look up
+     * @return the cached measurement or <code>null</code> if not cached.
+     */
+    public int[] get(Key key) {
+        int[] result = entries.get(key);
+        if (result == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether a measurement is cached, without counting a hit or miss and without affecting
+     * the eviction order.
+     * 
+     * @param key
+     *            the {@link Key} to look up
+     * @return whether a measurement for the {@link Key} is cached.
+     */
+    public boolean contains(Key key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Caches a measurement, evicting the least recently used entries if the cache exceeds its
+     * budget.
+     * 
+     * @param key
+     *            the {@link Key} of the measurement
+     * @param size
+     *            the measured size
+     */
+    public void put(Key key, int[] size) {
+        if (entries.put(key, size) == null) {
+            bytes += key.getEstimatedBytes();
+        }
+        trim();
+    }
+
+    /**
+     * Sets the budget of the cache, evicting entries immediately if required.
+     * 
+     * @param maxEntries
+     *            the maximum number of cached measurements
+     * @param maxBytes
+     *            the maximum estimated memory footprint of the cache in bytes
+     */
+    public void setBudget(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    private void trim() {
+        Iterator<Key> it = entries.keySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            bytes -= it.next().getEstimatedBytes();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes all cached measurements, for example when available fonts change.
+     */
+    public void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return the number of cached measurements.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the estimated memory footprint of the cache in bytes.
+     */
+    public long getEstimatedBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the number of lookups that were answered from the cache.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups that were not answered from the cache.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of entries evicted to stay within the budget.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the ratio of hits to lookups, 0 if there were no lookups yet.
+     */
+    public double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "JfxMeasurementCache[" + entries.size() + " entries, " + bytes + " bytes, hit rate "
+                + Math.round(getHitRate() * 100) + "%]";
+    }
+
+    /**
+     * Identifies a measurement: the text, the requested font and the wrap width.
+     */
+    public static final class Key {
+
+        private final String text;
+        private final List<String> fontNames;
+        private final double size;
+        private final boolean bold;
+        private final boolean italic;
+        private final double wrapWidth;
+        private final int hash;
+
+        /**
+         * @param text
+         *            the text to measure
+         * @param fontNames
+         *            the font family names in order of preference
+         * @param size
+         *            the font size
+         * @param bold
+         *            whether the font is bold
+         * @param italic
+         *            whether the font is italic
+         * @param wrapWidth
+         *            the width to wrap at, or <= 0 to not wrap.
+         */
+        public Key(String text, List<String> fontNames, double size, boolean bold,
+                boolean italic, double wrapWidth) {
+            this.text = text;
+            this.fontNames = fontNames;
+            this.size = size;
+            this.bold = bold;
+            this.italic = italic;
+            this.wrapWidth = wrapWidth;
+
+            int h = text.hashCode();
+            h = 31 * h + fontNames.hashCode();
+            h = 31 * h + Double.valueOf(size).hashCode();
+            h = 31 * h + (bold ? 1 : 0);
+            h = 31 * h + (italic ? 1 : 0);
+            this.hash = 31 * h + Double.valueOf(wrapWidth).hashCode();
+        }
+
+        /**
+         * @return the text to measure.
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return the font family names in order of preference.
+         */
+        public List<String> getFontNames() {
+            return fontNames;
+        }
+
+        /**
+         * @return the font size.
+         */
+        public double getSize() {
+            return size;
+        }
+
+        /**
+         * @return whether the font is bold.
+         */
+        public boolean isBold() {
+            return bold;
+        }
+
+        /**
+         * @return whether the font is italic.
+         */
+        public boolean isItalic() {
+            return italic;
+        }
+
+        /**
+         * @return the width to wrap at, or <= 0 to not wrap.
+         */
+        public double getWrapWidth() {
+            return wrapWidth;
+        }
+
+        long getEstimatedBytes() {
+            long result = ENTRY_OVERHEAD + 2L * text.length();
+            for (String name : fontNames) {
+                result += 2L * name.length();
+            }
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) obj;
+            return hash == other.hash && bold == other.bold && italic == other.italic
+                    && Double.compare(size, other.size) == 0
+                    && Double.compare(wrapWidth, other.wrapWidth) == 0 && text.equals(other.text)
+                    && fontNames.equals(other.fontNames);
+        }
+
+        @Override
+        public String toString() {
+            return "\"" + text + "\" " + fontNames + " " + size + (bold ? " bold" : "")
+                    + (italic ? " italic" : "") + (wrapWidth > 0 ? " wrap " + wrapWidth : "");
+        }
+    }
+
+}
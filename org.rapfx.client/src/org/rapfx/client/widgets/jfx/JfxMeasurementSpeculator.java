@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) Markus Duft <markus.duft@salomon.at>
+ */
+package org.rapfx.client.widgets.jfx;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.rapfx.client.lifecycle.OperationDispatcher.SpeculativeStage;
+import org.rapfx.client.protocol.types.RemoteObject;
+import org.rapfx.client.protocol.types.operations.CreateOperation;
+import org.rapfx.client.widgets.jfx.impl.JfxButton;
+import org.rapfx.client.widgets.jfx.impl.JfxLabel;
+import org.rapfx.client.widgets.jfx.impl.JfxText;
+
+/**
+ * Measures the texts of newly created {@link JfxLabel}s, {@link JfxButton}s and {@link JfxText}s
+ * before the server asks for them. The server calculates its layout from text sizes, so a
+ * <code>measureItems</code> call for the same texts and fonts is about to follow. Measuring in
+ * spare time fills the {@link JfxMeasurementCache}, so that the call is answered without measuring.
+ * <p>
+ * Only used on the JavaFX Application Thread.
+ */
+public class JfxMeasurementSpeculator implements SpeculativeStage {
+
+    private static final Log log = LogFactory.getLog(JfxMeasurementSpeculator.class);
+
+    /**
+     * Number of texts measured at once between checks of the deadline.
+     */
+    private static final int CHUNK_SIZE = 16;
+
+    private final JfxTextMeasurement measurement;
+    private final Deque<JfxMeasurementCache.Key> pending = new ArrayDeque<>();
+    private long measured;
+
+    /**
+     * @param measurement
+     *            the {@link JfxTextMeasurement} whose cache to fill.
+     */
+    public JfxMeasurementSpeculator(JfxTextMeasurement measurement) {
+        this.measurement = measurement;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void created(CreateOperation op, RemoteObject object) {
+        boolean hasText = object instanceof JfxLabel || object instanceof JfxButton
+                || object instanceof JfxText;
+        Map<String, Object> properties = op.getProperties();
+        if (!hasText || properties == null) {
+            return;
+        }
+
+        Object text = properties.get("text");
+        Object font = properties.get("font");
+        if (!(text instanceof String) || !(font instanceof List) || ((List<?>) font).size() != 4) {
+            return;
+        }
+
+        List<Object> raw = (List<Object>) font;
+        JfxMeasurementCache.Key key = new JfxMeasurementCache.Key((String) text,
+                (List<String>) raw.get(0), (Double) raw.get(1), (Boolean) raw.get(2),
+                (Boolean) raw.get(3), 0);
+
+        if (!measurement.getCache().contains(key)) {
+            pending.add(key);
+        }
+    }
+
+    @Override
+    public boolean run(long deadline) {
+        while (!pending.isEmpty() && System.nanoTime() < deadline) {
+            List<JfxMeasurementCache.Key> chunk = new ArrayList<>(CHUNK_SIZE);
+            while (chunk.size() < CHUNK_SIZE && !pending.isEmpty()) {
+                JfxMeasurementCache.Key key = pending.poll();
+
+                // may have been requested by the server in the meantime.
+                if (!measurement.getCache().contains(key)) {
+                    chunk.add(key);
+                }
+            }
+
+            measurement.measureAhead(chunk);
+            measured += chunk.size();
+        }
+
+        if (pending.isEmpty() && log.isTraceEnabled()) {
+            log.trace("speculatively measured " + measured + " texts so far");
+        }
+
+        return !pending.isEmpty();
+    }
+
+    /**
+     * @return the number of texts measured ahead of time so far.
+     */
+    public long getMeasuredCount() {
+        return measured;
+    }
+
+}
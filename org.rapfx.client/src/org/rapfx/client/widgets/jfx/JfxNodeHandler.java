@@ -3,9 +3,9 @@
  */
 package org.rapfx.client.widgets.jfx;
 
-import java.util.Collections;
 import java.util.Set;
 
+import org.rapfx.client.protocol.theme.StateMask;
 import org.rapfx.client.protocol.types.ReflectiveTypeHandler;
 import org.rapfx.client.protocol.types.TypeHandler;
 import org.rapfx.client.widgets.jfx.impl.JfxStyleHolder.Style;
@@ -19,6 +19,16 @@ import org.rapfx.client.widgets.jfx.theming.JfxStylesheet;
  */
 public abstract class JfxNodeHandler<T extends JfxNodeObject<?>> extends ReflectiveTypeHandler<T> {
 
+    /**
+     * The simple names of classes, as {@link Class#getSimpleName()} calculates them on each call.
+     */
+    private static final ClassValue<String> simpleNames = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            return type.getSimpleName();
+        }
+    };
+
     public JfxNodeHandler() {
         registerThemeContributions();
     }
@@ -39,7 +49,7 @@ public abstract class JfxNodeHandler<T extends JfxNodeObject<?>> extends Reflect
      * @return the style class name that can be used as selector into the stylesheet.
      */
     public static String getStyleClass(Class<?> clazz) {
-        return getStyleClass(clazz, Collections.<Style> emptySet());
+        return getStyleClass(clazz, 0);
     }
 
     /**
@@ -55,7 +65,21 @@ public abstract class JfxNodeHandler<T extends JfxNodeObject<?>> extends Reflect
      * @return
      */
     public static String getStyleClass(Class<?> clazz, Set<Style> styles) {
-        return JfxStylesheet.getStyledName(clazz.getSimpleName(), styles);
+        return getStyleClass(clazz, StateMask.ofStyles(styles));
+    }
+
+    /**
+     * See {@link #getStyleClass(Class, Set)}, taking the styles as {@link StateMask}.
+     * 
+     * @param clazz
+     *            the {@link Class} for which to calculate the name.
+     * @param styles
+     *            the {@link StateMask} of the styles to take into account.
+     * @return the style class name that can be used as selector into the stylesheet.
+     */
+    public static String getStyleClass(Class<?> clazz, long styles) {
+        // names are cached, so this does not build any strings.
+        return JfxStylesheet.getStyledName(simpleNames.get(clazz), styles);
     }
 
 }
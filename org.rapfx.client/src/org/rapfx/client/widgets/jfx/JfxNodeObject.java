@@ -9,6 +9,7 @@ import javafx.scene.Node;
 import javafx.scene.layout.Pane;
 
 import org.rapfx.client.protocol.theme.ThemeTypeHelper;
+import org.rapfx.client.protocol.types.RapProperty;
 import org.rapfx.client.protocol.types.RemoteObject;
 import org.rapfx.client.protocol.types.TypeHandler;
 
@@ -47,10 +48,9 @@ public abstract class JfxNodeObject<T extends Node> extends JfxBaseObject<T> {
      * @param parentId
      *            the ID of the new parent
      */
+    @RapProperty("parent")
     public void setParent(String parentId) {
-        if (parent != null) {
-            parent.getChildren().remove(getNode());
-        }
+        detachFromParent();
 
         parent = getLifeCycle().getObjectRegistry().get(parentId);
         if (parent == null) {
@@ -60,12 +60,31 @@ public abstract class JfxNodeObject<T extends Node> extends JfxBaseObject<T> {
 
         Pane node = parent.getNode();
         node.getChildren().add(getNode());
+        parent.attach(getObjectId());
+    }
+
+    /**
+     * Removes the managed {@link Node} from the current parent, if any.
+     */
+    private void detachFromParent() {
+        if (parent != null) {
+            parent.getNode().getChildren().remove(getNode());
+            parent.detach(getObjectId());
+            parent = null;
+        }
+    }
+
+    @Override
+    public void dispose() {
+        detachFromParent();
+        super.dispose();
     }
 
     /**
      * @param enabled
      *            the enabled state of this node.
      */
+    @RapProperty("enabled")
     public void setEnabled(Boolean enabled) {
         getNode().setDisable(!enabled);
     }
@@ -76,6 +95,7 @@ public abstract class JfxNodeObject<T extends Node> extends JfxBaseObject<T> {
      * @param raw
      *            the raw protocol value
      */
+    @RapProperty("background")
     public void setBackground(Object raw) {
         String rgba = ThemeTypeHelper.toColorString(raw);
         getNode().setStyle("-fx-background-color: " + rgba + ";");
@@ -87,6 +107,7 @@ public abstract class JfxNodeObject<T extends Node> extends JfxBaseObject<T> {
      * @param visible
      *            <code>true</code> is node should be visible, <code>false</code> to hide.
      */
+    @RapProperty("visibility")
     public void setVisibility(Boolean visible) {
         getNode().setVisible(visible);
     }
@@ -102,7 +123,7 @@ public abstract class JfxNodeObject<T extends Node> extends JfxBaseObject<T> {
      * @return the style class name for this object.
      */
     protected String getStyleClass() {
-        return JfxNodeHandler.getStyleClass(this.getClass(), getStyle().getAllStyles());
+        return JfxNodeHandler.getStyleClass(this.getClass(), getStyle().getStyleMask());
     }
 
     @Override
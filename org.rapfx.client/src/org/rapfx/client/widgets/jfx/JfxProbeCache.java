@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) Markus Duft <markus.duft@salomon.at>
+ */
+package org.rapfx.client.widgets.jfx;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Persistent cache for text size probes. The server requests the same probes for each font in
+ * every session, so probe results are stored in a file below the user's home directory and
+ * answered from there after a restart.
+ * <p>
+ * Results depend on the installed fonts, so the file is keyed by
+ * {@link JfxTypeHelper#getFontFingerprint()}; a changed font configuration starts a new file. Only
+ * used on the JavaFX Application Thread.
+ */
+public class JfxProbeCache {
+
+    private static final Log log = LogFactory.getLog(JfxProbeCache.class);
+
+    private final Properties probes = new Properties();
+    private File file;
+    private boolean dirty;
+
+    /**
+     * @param key
+     *            the {@link JfxMeasurementCache.Key} of the probe
+     * @return the persisted size of the probe or <code>null</code> if not known.
+     */
+    public int[] get(JfxMeasurementCache.Key key) {
+        load();
+
+        String value = probes.getProperty(toPropertyKey(key));
+        if (value == null) {
+            return null;
+        }
+
+        int comma = value.indexOf(',');
+        try {
+            return new int[] { Integer.parseInt(value.substring(0, comma)),
+                    Integer.parseInt(value.substring(comma + 1)) };
+        } catch (RuntimeException e) {
+            log.debug("ignoring invalid probe entry " + value, e);
+            return null;
+        }
+    }
+
+    /**
+     * Remembers the size of a probe. The cache is written to disc on {@link #save()}.
+     * 
+     * @param key
+     *            the {@link JfxMeasurementCache.Key} of the probe
+     * @param size
+     *            the measured size
+     */
+    public void put(JfxMeasurementCache.Key key, int[] size) {
+        load();
+
+        String value = size[0] + "," + size[1];
+        if (!value.equals(probes.setProperty(toPropertyKey(key), value))) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Writes all probes to disc if there were changes since the last save. Failures are logged
+     * only, as the cache is an optimization.
+     */
+    public void save() {
+        if (!dirty) {
+            return;
+        }
+
+        if (!JfxToolkit.CACHE_DIR.isDirectory() && !JfxToolkit.CACHE_DIR.mkdirs()) {
+            log.warn("cannot create " + JfxToolkit.CACHE_DIR + ", not persisting probes");
+            return;
+        }
+
+        // write to a temporary file first, so that readers never see partial content.
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            probes.store(out, "RAP text size probes");
+        } catch (IOException e) {
+            log.warn("cannot persist probes to " + file, e);
+            return;
+        }
+
+        if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+            log.warn("cannot replace " + file);
+            return;
+        }
+
+        dirty = false;
+    }
+
+    /**
+     * @return the number of known probes.
+     */
+    public int size() {
+        load();
+        return probes.size();
+    }
+
+    private void load() {
+        if (file != null) {
+            return;
+        }
+
+        String name = "probes-" + JfxTypeHelper.getFontFingerprint() + ".properties";
+        file = new File(JfxToolkit.CACHE_DIR, name);
+        if (!file.isFile()) {
+            return;
+        }
+
+        try (InputStream in = new FileInputStream(file)) {
+            probes.load(in);
+        } catch (IOException e) {
+            log.warn("cannot load probes from " + file, e);
+            probes.clear();
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("loaded " + probes.size() + " probes from " + file);
+        }
+    }
+
+    /**
+     * @return the persistent representation of the given {@link JfxMeasurementCache.Key}.
+     */
+    private static String toPropertyKey(JfxMeasurementCache.Key key) {
+        StringBuilder builder = new StringBuilder();
+        for (String name : key.getFontNames()) {
+            builder.append(name).append(',');
+        }
+        builder.append(key.getSize()).append(key.isBold() ? ",b" : ",").append(
+                key.isItalic() ? "i" : "");
+        builder.append(',').append(key.getWrapWidth()).append(':').append(key.getText());
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "JfxProbeCache[" + (file == null ? "not loaded" : probes.size() + " probes, " + file)
+                + "]";
+    }
+
+}
@@ -3,34 +3,68 @@
  */
 package org.rapfx.client.widgets.jfx;
 
+import java.util.concurrent.TimeUnit;
+
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.util.Duration;
 
+/**
+ * Re-armable timer that runs a {@link Runnable} on the JavaFX Application Thread once it has not
+ * been requested again for a given time. The total delay is capped by a maximum latency counted
+ * from the first request, so that a steady stream of requests still runs the {@link Runnable}.
+ */
 public class JfxRunAtTimeline {
 
-    private Timeline timeline;
-    private final JfxToolkit toolkit;
+    private final Timeline timeline = new Timeline();
+    private final int maxLatency;
+    private long firstRequest = -1;
 
-    public JfxRunAtTimeline(JfxToolkit toolkit) {
-        this.toolkit = toolkit;
-    }
+    /**
+     * @param toolkit
+     *            the {@link JfxToolkit} to hand the {@link Runnable} back to once the timer fires.
+     * @param runnable
+     *            the {@link Runnable} to run.
+     * @param maxLatency
+     *            the maximum time in milliseconds between the first request and running the
+     *            {@link Runnable}.
+     */
+    public JfxRunAtTimeline(final JfxToolkit toolkit, final Runnable runnable, int maxLatency) {
+        this.maxLatency = maxLatency;
 
-    public void runIn(final Runnable runnable, int millis) {
-        if (timeline != null) {
-            timeline.stop();
-        }
-        timeline = new Timeline();
-        timeline.getKeyFrames().add(new KeyFrame(Duration.millis(millis)));
         timeline.setOnFinished(new EventHandler<ActionEvent>() {
             @Override
             public void handle(ActionEvent event) {
                 toolkit.removeAndRun(runnable);
             }
         });
+    }
+
+    /**
+     * (Re-)arms the timer to fire after the given delay, but never later than the maximum latency
+     * after the first request.
+     * 
+     * @param millis
+     *            the delay in milliseconds
+     * @return <code>true</code> if an already armed timer was re-armed, <code>false</code> if
+     *         this is the first request.
+     */
+    public boolean runIn(int millis) {
+        long now = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+        boolean rearmed = firstRequest >= 0;
+        if (!rearmed) {
+            firstRequest = now;
+        }
+
+        long delay = Math.max(0, Math.min(millis, maxLatency - (now - firstRequest)));
+
+        timeline.stop();
+        timeline.getKeyFrames().setAll(new KeyFrame(Duration.millis(delay)));
         timeline.playFromStart();
+
+        return rearmed;
     }
 
 }
@@ -3,7 +3,12 @@
  */
 package org.rapfx.client.widgets.jfx;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -16,6 +21,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.rapfx.client.ApplicationGlobals;
 import org.rapfx.client.protocol.types.AbstractRemoteObject;
+import org.rapfx.client.protocol.types.RapCall;
 import org.rapfx.client.protocol.types.ReflectiveTypeHandler;
 import org.rapfx.client.protocol.types.operations.CallOperation;
 
@@ -27,15 +33,83 @@ public class JfxTextMeasurement extends AbstractRemoteObject {
     private static final Log log = LogFactory.getLog(JfxTextMeasurement.class);
 
     /**
-     * Measures the text sizes of the given items.
+     * Prefix of the IDs the server uses for character probes in {@link #measureItems(List)}.
+     */
+    private static final String PROBE_PREFIX = "p";
+
+    /**
+     * Cache for measurement results, as the server requests the same measurements repeatedly.
+     */
+    private final JfxMeasurementCache cache = new JfxMeasurementCache();
+
+    /**
+     * The {@link Text} node used for all measurements. It is never part of a scene and never
+     * rendered; its layout bounds are calculated from the font metrics only.
+     */
+    private Text measuringNode;
+
+    /**
+     * Persistent cache for probe results, as the server requests the same probes in each session.
+     */
+    private final JfxProbeCache probeCache = new JfxProbeCache();
+
+    /**
+     * Measures the text sizes of the given items. Items with an ID starting with
+     * {@link #PROBE_PREFIX} are character probes, which the server uses to estimate text sizes for
+     * a font without asking the client. Probe results are persisted, so that they are answered
+     * without measuring after a restart.
      * 
      * @param items
      *            a list of raw protocol values representing a measurement item (containing font,
      *            text, wrapping and such information).
      */
-    @SuppressWarnings("unchecked")
+    @RapCall("measureItems")
     public void measureItems(List<List<Object>> items) {
-        Map<String, int[]> result = new TreeMap<>();
+        Map<String, JfxMeasurementCache.Key> requests = parseItems(items);
+        Map<JfxMeasurementCache.Key, int[]> sizes = new HashMap<>();
+
+        List<JfxMeasurementCache.Key> toMeasure = new ArrayList<>();
+        List<JfxMeasurementCache.Key> newProbes = new ArrayList<>();
+        for (Map.Entry<String, JfxMeasurementCache.Key> request : requests.entrySet()) {
+            JfxMeasurementCache.Key key = request.getValue();
+            if (request.getKey().startsWith(PROBE_PREFIX)) {
+                int[] size = probeCache.get(key);
+                if (size != null) {
+                    sizes.put(key, size);
+                    continue;
+                }
+                newProbes.add(key);
+            }
+            toMeasure.add(key);
+        }
+
+        sizes.putAll(measure(toMeasure, false));
+
+        if (!newProbes.isEmpty()) {
+            for (JfxMeasurementCache.Key key : newProbes) {
+                probeCache.put(key, sizes.get(key));
+            }
+            probeCache.save();
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("measured " + items.size() + " items (" + newProbes.size()
+                    + " new probes), " + cache + ", " + probeCache);
+        }
+
+        reply(requests, sizes);
+    }
+
+    /**
+     * Parses raw protocol measurement items.
+     * 
+     * @param items
+     *            a list of raw protocol values representing a measurement item.
+     * @return the {@link JfxMeasurementCache.Key}s of all valid items by their ID.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, JfxMeasurementCache.Key> parseItems(List<List<Object>> items) {
+        Map<String, JfxMeasurementCache.Key> requests = new LinkedHashMap<>();
         for (List<Object> item : items) {
             if (item.size() < 6) {
                 log.warn("measurement item has invalid size " + item.size() + " (" + item + ")");
@@ -44,6 +118,10 @@ public class JfxTextMeasurement extends AbstractRemoteObject {
 
             String id = (String) item.get(0);
             String text = (String) item.get(1);
+            if (text == null) {
+                // measures as an empty text, instead of failing the whole request.
+                text = "";
+            }
             List<String> fontNames = (List<String>) item.get(2);
 
             // TODO: check sizes for plausibility
@@ -56,10 +134,25 @@ public class JfxTextMeasurement extends AbstractRemoteObject {
                 wrapWidth = (double) item.get(6);
             }
 
-            result.put(
-                    id,
-                    measure(text, JfxTypeHelper.findFont(fontNames, fontSize, bold, italic),
-                            wrapWidth));
+            requests.put(id, new JfxMeasurementCache.Key(text, fontNames, fontSize, bold, italic,
+                    wrapWidth));
+        }
+        return requests;
+    }
+
+    /**
+     * Sends the measured sizes back to the server.
+     * 
+     * @param requests
+     *            the requested measurements by their ID
+     * @param sizes
+     *            the measured sizes
+     */
+    private void reply(Map<String, JfxMeasurementCache.Key> requests,
+            Map<JfxMeasurementCache.Key, int[]> sizes) {
+        Map<String, int[]> result = new TreeMap<>();
+        for (Map.Entry<String, JfxMeasurementCache.Key> request : requests.entrySet()) {
+            result.put(request.getKey(), sizes.get(request.getValue()));
         }
 
         Map<String, ? extends Object> arguments = Collections.singletonMap("results", result);
@@ -67,9 +160,103 @@ public class JfxTextMeasurement extends AbstractRemoteObject {
         ApplicationGlobals.getInstance().getLifeCycle().send(op);
     }
 
+    /**
+     * Measures the given items ahead of time, so that later requests for them are answered from
+     * the cache. Nothing is sent to the server.
+     * 
+     * @param keys
+     *            the items to measure
+     */
+    void measureAhead(Collection<JfxMeasurementCache.Key> keys) {
+        measure(keys, true);
+    }
+
+    /**
+     * @return the cache holding measurement results.
+     */
+    public JfxMeasurementCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return the persistent cache holding probe results.
+     */
+    public JfxProbeCache getProbeCache() {
+        return probeCache;
+    }
+
+    /**
+     * Measures all given items in one pass. Cached results are used where available, the remaining
+     * items are grouped by font, so that the font of the measuring node changes as rarely as
+     * possible.
+     * 
+     * @param keys
+     *            the items to measure
+     * @param speculative
+     *            whether the items are measured ahead of time. Cached items are then skipped
+     *            without counting cache hits or misses, so that the statistics of the
+     *            {@link JfxMeasurementCache} reflect requests of the server only.
+     * @return the measured sizes for all given items, or for the items that were not cached yet if
+     *         measuring speculatively.
+     */
+    private Map<JfxMeasurementCache.Key, int[]> measure(Collection<JfxMeasurementCache.Key> keys,
+            boolean speculative) {
+        Map<JfxMeasurementCache.Key, int[]> result = new HashMap<>();
+        Map<List<Object>, List<JfxMeasurementCache.Key>> byFont = new LinkedHashMap<>();
+
+        for (JfxMeasurementCache.Key key : keys) {
+            if (result.containsKey(key)) {
+                continue;
+            }
+
+            if (speculative) {
+                if (cache.contains(key)) {
+                    continue;
+                }
+            } else {
+                int[] size = cache.get(key);
+                if (size != null) {
+                    result.put(key, size);
+                    continue;
+                }
+            }
+
+            List<Object> font = Arrays.<Object> asList(key.getFontNames(), key.getSize(),
+                    key.isBold(), key.isItalic());
+            List<JfxMeasurementCache.Key> group = byFont.get(font);
+            if (group == null) {
+                group = new ArrayList<>();
+                byFont.put(font, group);
+            }
+            group.add(key);
+        }
+
+        for (List<JfxMeasurementCache.Key> group : byFont.values()) {
+            JfxMeasurementCache.Key first = group.get(0);
+            Font font = JfxTypeHelper.findFont(first.getFontNames(), first.getSize(),
+                    first.isBold(), first.isItalic());
+
+            for (JfxMeasurementCache.Key key : group) {
+                if (!result.containsKey(key)) {
+                    int[] size = measure(key.getText(), font, key.getWrapWidth());
+                    cache.put(key, size);
+                    result.put(key, size);
+                }
+            }
+        }
+
+        // don't keep the last measured text alive.
+        if (measuringNode != null) {
+            measuringNode.setText(null);
+        }
+
+        return result;
+    }
+
     /**
      * Measures the bounds of the given text with the given font, possibly wrapping at a specified
-     * width.
+     * width. Uses the layout bounds of a single, re-used {@link Text} node, which does not require
+     * rendering the text.
      * 
      * @param text
      *            the text to measure
@@ -77,14 +264,17 @@ public class JfxTextMeasurement extends AbstractRemoteObject {
      *            the font to use for calculation
      * @param wrapWidth
      *            the width to wrap at, or <= 0 to not wrap.
-     * @return
+     * @return the size of the text.
      */
     private int[] measure(String text, Font font, double wrapWidth) {
-        Text tx = new Text();
-        tx.setText(text);
+        if (measuringNode == null) {
+            measuringNode = new Text();
+        }
+
+        Text tx = measuringNode;
         tx.setFont(font);
-        tx.setWrappingWidth(wrapWidth);
-        tx.snapshot(null, null);
+        tx.setWrappingWidth(wrapWidth > 0 ? wrapWidth : 0);
+        tx.setText(text);
         Bounds bounds = tx.getLayoutBounds();
 
         // add some buffer value :)
@@ -3,6 +3,8 @@
  */
 package org.rapfx.client.widgets.jfx;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.util.Map;
@@ -12,8 +14,10 @@ import org.apache.commons.logging.LogFactory;
 import org.rapfx.client.ApplicationGlobals;
 import org.rapfx.client.protocol.theme.Theme;
 import org.rapfx.client.protocol.theme.ThemeData;
+import org.rapfx.client.protocol.theme.ThemeSnapshot;
 import org.rapfx.client.protocol.theme.ThemeValues;
 import org.rapfx.client.protocol.types.AbstractRemoteObject;
+import org.rapfx.client.protocol.types.RapCall;
 import org.rapfx.client.protocol.types.ReflectiveTypeHandler;
 import org.rapfx.client.transport.Transport;
 import org.rapfx.client.transport.Transport.RemoteFile;
@@ -25,10 +29,22 @@ import org.rapfx.client.widgets.jfx.theming.JfxStylesheet;
 public class JfxThemeStore extends AbstractRemoteObject {
 
     private static final Log log = LogFactory.getLog(JfxThemeStore.class);
+
+    /**
+     * Location of the persisted {@link ThemeSnapshot}s, see {@link #loadTheme(String)}.
+     */
+    private static final File SNAPSHOT_DIR = new File(JfxToolkit.CACHE_DIR, "themes");
+
     private Theme fallbackTheme;
     private Theme activeTheme;
     private JfxStylesheet stylesheet;
 
+    /**
+     * Fingerprints of the raw contents of the themes, see {@link #getThemeFingerprint()}.
+     */
+    private String fallbackFingerprint;
+    private String activeFingerprint;
+
     public JfxThemeStore() {
         activeTheme = new Theme(new ThemeValues(), new ThemeData());
     }
@@ -37,30 +53,55 @@ public class JfxThemeStore extends AbstractRemoteObject {
         return activeTheme;
     }
 
+    @RapCall("loadFallbackTheme")
     public void loadFallbackTheme(String url) {
-        fallbackTheme = getThemeFromResource(url);
+        ThemeSnapshot snapshot = loadTheme(url);
+        fallbackTheme = snapshot == null ? null : snapshot.getTheme();
+        fallbackFingerprint = snapshot == null ? null : snapshot.getFingerprint();
 
         if (activeTheme != null) {
             activeTheme.setFallback(fallbackTheme);
         }
+
+        // values of the active theme may now resolve differently.
+        if (stylesheet != null) {
+            stylesheet.invalidate(getThemeFingerprint());
+            stylesheet.update();
+        }
     }
 
+    @RapCall("loadActiveTheme")
     public void loadActiveTheme(String url) {
-        activeTheme = getThemeFromResource(url);
+        ThemeSnapshot snapshot = loadTheme(url);
+        activeTheme = snapshot == null ? null : snapshot.getTheme();
+        activeFingerprint = snapshot == null ? null : snapshot.getFingerprint();
 
         if (fallbackTheme != null) {
             activeTheme.setFallback(fallbackTheme);
         }
 
-        stylesheet = new JfxStylesheet(activeTheme);
+        // CSS is generated lazily, so a cached binary stylesheet avoids generating it at all.
+        stylesheet = new JfxStylesheet(activeTheme, getThemeFingerprint());
     }
 
     public JfxStylesheet getStylesheet() {
         return stylesheet;
     }
 
-    private Theme getThemeFromResource(String url) {
-        RemoteFile file = getRemoteResource(url);
+    /**
+     * @return a fingerprint of the active and fallback theme, changing whenever the contents of
+     *         either changes. <code>null</code> if the active theme is not known.
+     */
+    public String getThemeFingerprint() {
+        if (activeFingerprint == null) {
+            return null;
+        }
+
+        return JfxStylesheet.digest(activeFingerprint.getBytes(), fallbackFingerprint == null
+                ? null : fallbackFingerprint.getBytes());
+    }
+
+    private static Theme getTheme(RemoteFile file) {
         if (file == null) {
             return null;
         }
@@ -79,15 +120,103 @@ public class JfxThemeStore extends AbstractRemoteObject {
         return null;
     }
 
-    private static RemoteFile getRemoteResource(String relative) {
-        Transport tp = ApplicationGlobals.getInstance().getLifeCycle().getTransport();
-        URL url = tp.getContextURL(relative);
+    /**
+     * Loads the theme at the given location. A snapshot of the parsed theme persisted by an earlier
+     * session is used if available, so that the theme is neither downloaded nor parsed again. The
+     * snapshot is revalidated with the server in the background; a changed theme is persisted and
+     * used from the next start on.
+     */
+    private static ThemeSnapshot loadTheme(String relative) {
+        final Transport tp = ApplicationGlobals.getInstance().getLifeCycle().getTransport();
+        final URL url = tp.getContextURL(relative);
 
         if (url == null) {
             return null;
         }
 
-        return tp.getFile(url);
+        final File file = new File(SNAPSHOT_DIR, JfxStylesheet.digest(url.toString().getBytes())
+                + ".theme");
+        final ThemeSnapshot cached = ThemeSnapshot.read(file);
+        if (cached != null && url.toString().equals(cached.getUrl())) {
+            if (log.isDebugEnabled()) {
+                log.debug("using theme snapshot " + file + " for " + url);
+            }
+
+            Thread revalidate = new Thread("Theme Revalidation") {
+                @Override
+                public void run() {
+                    revalidate(tp, url, cached, file);
+                }
+            };
+            revalidate.setDaemon(true);
+            revalidate.start();
+
+            return cached;
+        }
+
+        final ThemeSnapshot snapshot = toSnapshot(url, tp.getFile(url));
+        if (snapshot != null) {
+            Thread writer = new Thread("Theme Snapshot Writer") {
+                @Override
+                public void run() {
+                    persist(snapshot, file);
+                }
+            };
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Asks the server whether the theme of the given snapshot changed, and persists a new snapshot
+     * if so. Failures are logged only, as the existing snapshot stays valid for this session.
+     */
+    private static void revalidate(Transport tp, URL url, ThemeSnapshot cached, File file) {
+        try {
+            RemoteFile remote = tp.getFileIfModified(url, cached.getEntityTag(),
+                    cached.getLastModified());
+            ThemeSnapshot fresh = toSnapshot(url, remote);
+            if (fresh == null) {
+                return;
+            }
+
+            if (!fresh.getFingerprint().equals(cached.getFingerprint())) {
+                log.info("theme " + url + " changed, using it from the next start");
+            }
+
+            // persist even if unchanged, so that the new validators are used next time.
+            persist(fresh, file);
+        } catch (RuntimeException e) {
+            log.debug("cannot revalidate theme snapshot for " + url, e);
+        }
+    }
+
+    private static ThemeSnapshot toSnapshot(URL url, RemoteFile file) {
+        Theme theme = getTheme(file);
+        if (theme == null) {
+            return null;
+        }
+
+        return new ThemeSnapshot(url.toString(), file.getEntityTag(), file.getLastModified(),
+                JfxStylesheet.digest(file.getContent()), theme);
+    }
+
+    /**
+     * Writes the given snapshot. Failures are logged only, as snapshots are an optimization.
+     */
+    private static void persist(ThemeSnapshot snapshot, File file) {
+        if (!SNAPSHOT_DIR.isDirectory() && !SNAPSHOT_DIR.mkdirs()) {
+            log.warn("cannot create " + SNAPSHOT_DIR + ", not persisting theme snapshot");
+            return;
+        }
+
+        try {
+            snapshot.write(file);
+        } catch (IOException | RuntimeException e) {
+            log.warn("cannot persist theme snapshot to " + file, e);
+        }
     }
 
     public static class Handler extends ReflectiveTypeHandler<JfxThemeStore> {
@@ -3,24 +3,37 @@
  */
 package org.rapfx.client.widgets.jfx;
 
+import java.io.File;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javafx.animation.Animation;
+import javafx.animation.AnimationTimer;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.rapfx.client.ApplicationGlobals;
 import org.rapfx.client.lifecycle.LifeCycle;
 import org.rapfx.client.lifecycle.ObjectRegistry;
+import org.rapfx.client.lifecycle.ObjectRegistry.IndexListener;
+import org.rapfx.client.lifecycle.ObjectRegistry.TypeIndex;
 import org.rapfx.client.lifecycle.OperationDispatcher;
 import org.rapfx.client.protocol.Message;
 import org.rapfx.client.protocol.types.Operation;
@@ -43,6 +56,25 @@ public class JfxToolkit implements WidgetToolkit {
 
     private static final Log log = LogFactory.getLog(JfxToolkit.class);
 
+    /**
+     * Directory for caches persisted by the client across sessions.
+     */
+    public static final File CACHE_DIR = new File(System.getProperty("user.home"), ".rapfx");
+
+    /**
+     * Upper bound in milliseconds for the delay of a {@link Runnable} passed to
+     * {@link #execute(Runnable, int)}, counted from the first request, no matter how often it is
+     * re-requested in the meantime.
+     */
+    private static final int MAX_EXECUTE_LATENCY = 500;
+
+    /**
+     * Time in nanoseconds that may be spent dispatching {@link Operation}s before yielding to the
+     * next JavaFX pulse, so that rendering and input handling continue during large
+     * {@link Message}s.
+     */
+    private static final long DISPATCH_BUDGET = TimeUnit.MILLISECONDS.toNanos(8);
+
     /**
      * The dispatcher responsible for handling server responses.
      */
@@ -53,6 +85,35 @@ public class JfxToolkit implements WidgetToolkit {
      */
     private final Map<Runnable, JfxRunAtTimeline> runQueue = new HashMap<>();
 
+    /**
+     * Number of {@link #execute(Runnable, int)} requests that were coalesced into an already
+     * pending execution.
+     */
+    private final AtomicLong coalescedExecutions = new AtomicLong();
+
+    /**
+     * {@link Operation}s waiting to be dispatched, interleaved with {@link Runnable}s from
+     * {@link #asyncExec(Runnable)} that have to wait for them. Only accessed from the JavaFX
+     * Application Thread.
+     */
+    private final Deque<Object> pendingDispatch = new ArrayDeque<>();
+
+    /**
+     * Whether {@link #pendingDispatch} is currently being drained. Only accessed from the JavaFX
+     * Application Thread.
+     */
+    private boolean draining;
+
+    /**
+     * Continues dispatching of {@link #pendingDispatch} on each JavaFX pulse.
+     */
+    private final AnimationTimer dispatchTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            drainPendingDispatch();
+        }
+    };
+
     /**
      * Collection of {@link Message}s received before the actual JavaFX framework has been started
      */
@@ -68,6 +129,17 @@ public class JfxToolkit implements WidgetToolkit {
      */
     private LifeCycle lifecycle;
 
+    /**
+     * Index of all {@link JfxShell}s in the {@link LifeCycle}s object registry.
+     */
+    private TypeIndex<JfxShell> shells;
+
+    /**
+     * All {@link JfxShell}s that are currently showing. Only accessed from the JavaFX Application
+     * Thread.
+     */
+    private final Set<JfxShell> visibleShells = new HashSet<>();
+
     @Override
     public void initialize(LifeCycle lifecycle) {
         // initialize the lifecycle dependent parts of the toolkit.
@@ -76,6 +148,25 @@ public class JfxToolkit implements WidgetToolkit {
 
         JfxApplication.initTray();
 
+        // keep track of shells without scanning the whole registry.
+        shells = lifecycle.getObjectRegistry().getIndex(JfxShell.class);
+        shells.addListener(new IndexListener<JfxShell>() {
+            @Override
+            public void added(String id, JfxShell obj) {
+                JfxApplication.resetStatus();
+            }
+
+            @Override
+            public void removed(String id, JfxShell obj) {
+                // disposed shells may not report being hidden anymore.
+                shellVisibilityChanged(obj, false);
+
+                if (log.isDebugEnabled()) {
+                    log.debug("shell " + id + " removed, " + shells.size() + " left");
+                }
+            }
+        });
+
         // initialize the handlers (may already require lifecycle to be set!)
         ObjectRegistry<TypeHandler<? extends RemoteObject>> handlers = lifecycle
                 .getTypeHandlerRegistry();
@@ -97,6 +188,11 @@ public class JfxToolkit implements WidgetToolkit {
         createSingleton(JfxClientInfo.Handler.ID);
         createSingleton(JfxThemeStore.Handler.ID);
         createSingleton(JfxTextMeasurement.Handler.ID);
+
+        // measure texts of new widgets before the server asks for them.
+        JfxTextMeasurement measurement = lifecycle.getObjectRegistry().get(
+                JfxTextMeasurement.Handler.ID);
+        dispatcher.setSpeculativeStage(new JfxMeasurementSpeculator(measurement));
     }
 
     /**
@@ -115,6 +211,43 @@ public class JfxToolkit implements WidgetToolkit {
         return lifecycle;
     }
 
+    /**
+     * @return the {@link OperationDispatcher} handling server responses, also providing statistics
+     *         about created, destroyed and live objects. This is only valid after
+     *         {@link #initialize(LifeCycle)} has been called.
+     */
+    public OperationDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * @return the index of all {@link JfxShell}s currently known. This is only valid after
+     *         {@link #initialize(LifeCycle)} has been called.
+     */
+    public TypeIndex<JfxShell> getShells() {
+        return shells;
+    }
+
+    /**
+     * Keeps track of the {@link JfxShell}s that are showing. Once the last one is hidden, a
+     * count-down to exit the application is started, see {@link JfxApplication}. Must be called
+     * on the JavaFX Application Thread.
+     * 
+     * @param shell
+     *            the {@link JfxShell} that was shown or hidden
+     * @param showing
+     *            whether the {@link JfxShell} is showing now
+     */
+    public void shellVisibilityChanged(JfxShell shell, boolean showing) {
+        if (showing) {
+            if (visibleShells.add(shell) && visibleShells.size() == 1) {
+                JfxApplication.stopCountdown();
+            }
+        } else if (visibleShells.remove(shell) && visibleShells.isEmpty()) {
+            JfxApplication.startCountdown();
+        }
+    }
+
     @Override
     public void run() {
         Application.launch(JfxApplication.class, (String) null);
@@ -127,20 +260,91 @@ public class JfxToolkit implements WidgetToolkit {
             return;
         }
 
+        if (!Platform.isFxApplicationThread()) {
+            // keeps order with asyncExec, which is queued the same way.
+            Platform.runLater(new Runnable() {
+                @Override
+                public void run() {
+                    dispatch(message);
+                }
+            });
+            return;
+        }
+
         if (log.isTraceEnabled()) {
             log.trace("dispatching: " + message);
         }
 
-        for (Operation op : message.getOperations()) {
-            try {
-                if (!dispatcher.dispatch(op)) {
-                    log.warn("unable to handle " + op);
+        if (draining) {
+            // called from a Runnable in pendingDispatch: the operations take its place, in order,
+            // and are picked up by the drain already in progress.
+            List<Operation> operations = message.getOperations();
+            for (int i = operations.size() - 1; i >= 0; --i) {
+                pendingDispatch.addFirst(operations.get(i));
+            }
+            return;
+        }
+
+        pendingDispatch.addAll(message.getOperations());
+        drainPendingDispatch();
+    }
+
+    /**
+     * Dispatches pending {@link Operation}s (and runs {@link Runnable}s waiting for them) in order
+     * until the {@link #DISPATCH_BUDGET} is used up. Budget left after dispatching everything is
+     * used for speculative work of the {@link OperationDispatcher}. If there is work left, it is
+     * continued on the next JavaFX pulse. Drains never nest, see {@link #dispatch(Message)}.
+     */
+    private void drainPendingDispatch() {
+        draining = true;
+        try {
+            drainUntil(System.nanoTime() + DISPATCH_BUDGET);
+        } finally {
+            draining = false;
+        }
+    }
+
+    private void drainUntil(long deadline) {
+        Object next;
+        while ((next = pendingDispatch.poll()) != null) {
+            if (next instanceof Runnable) {
+                ((Runnable) next).run();
+            } else {
+                Operation op = (Operation) next;
+                try {
+                    if (!dispatcher.dispatch(op)) {
+                        log.warn("unable to handle " + op);
+                    }
+                } catch (Exception ex) {
+                    log.error("exception while dispatching operation=" + op, ex);
                 }
-            } catch (Exception ex) {
-                log.error("exception while dispatching operation=" + op, ex);
+            }
+
+            if (System.nanoTime() >= deadline && !pendingDispatch.isEmpty()) {
+                if (log.isTraceEnabled()) {
+                    log.trace("yielding to next pulse, " + pendingDispatch.size() + " pending");
+                }
+                dispatchTimer.start();
+                return;
             }
         }
 
+        // use the rest of the budget for speculative work, continued on later pulses if required.
+        if (dispatcher.speculate(deadline)) {
+            dispatchTimer.start();
+            return;
+        }
+
+        dispatchTimer.stop();
+    }
+
+    /**
+     * @return the number of {@link Operation}s and {@link Runnable}s that are waiting to be
+     *         dispatched on one of the next JavaFX pulses. Must be called on the JavaFX
+     *         Application Thread.
+     */
+    public int getPendingDispatchCount() {
+        return pendingDispatch.size();
     }
 
     @Override
@@ -148,13 +352,39 @@ public class JfxToolkit implements WidgetToolkit {
         synchronized (runQueue) {
             JfxRunAtTimeline timeline = runQueue.get(runnable);
             if (timeline == null) {
-                timeline = new JfxRunAtTimeline(this);
+                timeline = new JfxRunAtTimeline(this, runnable, MAX_EXECUTE_LATENCY);
+                runQueue.put(runnable, timeline);
             }
 
-            timeline.runIn(runnable, millis);
+            if (timeline.runIn(millis)) {
+                coalescedExecutions.incrementAndGet();
+            }
         }
     }
 
+    /**
+     * @return the number of {@link #execute(Runnable, int)} requests that did not cause an
+     *         additional execution, because the same {@link Runnable} was already pending.
+     */
+    public long getCoalescedExecutionCount() {
+        return coalescedExecutions.get();
+    }
+
+    @Override
+    public void asyncExec(final Runnable runnable) {
+        Platform.runLater(new Runnable() {
+            @Override
+            public void run() {
+                // keep order with operations that are still waiting for their time slice.
+                if (pendingDispatch.isEmpty()) {
+                    runnable.run();
+                } else {
+                    pendingDispatch.add(runnable);
+                }
+            }
+        });
+    }
+
     void removeAndRun(Runnable runnable) {
         synchronized (runQueue) {
             runQueue.remove(runnable);
@@ -175,18 +405,32 @@ public class JfxToolkit implements WidgetToolkit {
         private static final int SHUTDOWN_TIMEOUT = 10;
         private static JfxTrayIcon trayIcon;
         private static int shutdownCounter = SHUTDOWN_TIMEOUT;
-        private static Timer timer;
+
+        /**
+         * Counts down to exiting the application while no {@link JfxShell} is showing. Only
+         * accessed from the JavaFX Application Thread.
+         */
+        private static Timeline countdown;
 
         @Override
         public void start(Stage primaryStage) throws Exception {
             JfxToolkit tk = (JfxToolkit) ApplicationGlobals.getInstance().getToolkit();
             tk.jfxInitialized.set(true);
+
+            // the font index is required as soon as the first texts are measured.
+            JfxTypeHelper.preloadFonts();
+
             for (Message msg : tk.initialMessages) {
                 tk.dispatch(msg);
             }
             tk.initialMessages.clear();
 
             Platform.setImplicitExit(false);
+
+            // the server might never open a shell.
+            if (tk.visibleShells.isEmpty()) {
+                startCountdown();
+            }
         }
 
         /**
@@ -196,20 +440,41 @@ public class JfxToolkit implements WidgetToolkit {
         private static void initTray() {
             trayIcon = new JfxTrayIcon();
             resetStatus();
+        }
 
-            timer = new Timer(true);
-            timer.schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    checkStatus();
-                }
-            }, SHUTDOWN_INTERVAL, TimeUnit.SECONDS.toMillis(SHUTDOWN_INTERVAL));
+        /**
+         * Starts counting down to exiting the application, as no {@link JfxShell}s are left.
+         */
+        private static void startCountdown() {
+            if (countdown == null) {
+                countdown = new Timeline(new KeyFrame(Duration.seconds(SHUTDOWN_INTERVAL),
+                        new EventHandler<ActionEvent>() {
+                            @Override
+                            public void handle(ActionEvent event) {
+                                checkStatus();
+                            }
+                        }));
+                countdown.setCycleCount(Animation.INDEFINITE);
+            }
+
+            resetStatus();
+            countdown.playFromStart();
+        }
+
+        /**
+         * Stops the count-down, as a {@link JfxShell} is showing again.
+         */
+        private static void stopCountdown() {
+            if (countdown != null) {
+                countdown.stop();
+            }
+            resetStatus();
         }
 
         /**
-         * Checks whether the application is in a "working" state, and/or there are open shells
-         * left. Having no shells and no request in progress means that the user will very likely
-         * not be able to continue, so start a count-down to exit the application in that case.
+         * Checks whether the application is in a "working" state while no shells are left. Having
+         * no shells and no request in progress means that the user will very likely not be able
+         * to continue, so count down to exit the application in that case.
          */
         private static void checkStatus() {
             if (ApplicationGlobals.getInstance().getLifeCycle().isDispatching()) {
@@ -217,19 +482,9 @@ public class JfxToolkit implements WidgetToolkit {
                 return;
             }
 
-            for (Map.Entry<String, ?> entry : ApplicationGlobals.getInstance().getLifeCycle()
-                    .getObjectRegistry().getAll()) {
-                if (entry.getValue() instanceof JfxShell) {
-                    if (((JfxShell) entry.getValue()).getNode().getScene().getWindow().isShowing()) {
-                        resetStatus();
-                        return;
-                    }
-                }
-            }
-
             if (shutdownCounter <= 0) {
+                countdown.stop();
                 trayIcon.hide();
-                timer.cancel();
                 Platform.exit();
                 return;
             }
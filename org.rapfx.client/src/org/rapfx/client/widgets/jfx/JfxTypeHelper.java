@@ -3,7 +3,16 @@
  */
 package org.rapfx.client.widgets.jfx;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import javafx.geometry.Point2D;
 import javafx.geometry.Rectangle2D;
@@ -22,9 +31,64 @@ import org.rapfx.client.widgets.jfx.impl.JfxStyleHolder;
 public class JfxTypeHelper {
 
     /**
-     * List of all available {@link Font} families.
+     * Index of all available {@link Font} families by their lower-cased name. Built once in the
+     * background, see {@link #preloadFonts()}.
      */
-    private static final List<String> allFonts = Font.getFamilies();
+    private static final FutureTask<Map<String, String>> fontIndex = new FutureTask<>(
+            new Callable<Map<String, String>>() {
+                @Override
+                public Map<String, String> call() throws Exception {
+                    Map<String, String> result = new HashMap<>();
+                    for (String family : Font.getFamilies()) {
+                        String key = family.toLowerCase();
+                        if (!result.containsKey(key)) {
+                            result.put(key, family);
+                        }
+                    }
+                    return result;
+                }
+            });
+
+    /**
+     * Interned {@link Font}s, keyed by family, weight, posture and size.
+     */
+    private static final ConcurrentMap<FontKey, Font> fonts = new ConcurrentHashMap<>();
+
+    /**
+     * Starts building the index of available {@link Font} families in a background
+     * {@link Thread}, so that it is ready when the first {@link Font} is looked up. Calling this
+     * more than once has no effect.
+     */
+    public static void preloadFonts() {
+        Thread thread = new Thread(fontIndex, "RAP Client Font Index");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Calculates a fingerprint of the installed fonts. Measurements taken with a different set of
+     * fonts cannot be re-used, so persisted measurements are keyed by this fingerprint.
+     * 
+     * @return a fingerprint of all available font families.
+     */
+    public static String getFontFingerprint() {
+        List<String> families = new ArrayList<>(getFontIndex().values());
+        Collections.sort(families);
+        return Integer.toHexString(families.hashCode());
+    }
+
+    /**
+     * @return the index of available font families, waiting for it to be built if required.
+     */
+    private static Map<String, String> getFontIndex() {
+        // builds the index in the calling thread if not yet started or still running.
+        fontIndex.run();
+        try {
+            return fontIndex.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("cannot determine available fonts", e);
+        }
+    }
 
     /**
      * Converts a {@link Rectangle2D} into a type suitable for {@link Message}s sent to the server.
@@ -132,16 +196,34 @@ public class JfxTypeHelper {
     public static Font findFont(List<String> names, double size, boolean bold, boolean italic) {
         FontWeight weight = (bold ? FontWeight.BOLD : FontWeight.NORMAL);
         FontPosture posture = (italic ? FontPosture.ITALIC : FontPosture.REGULAR);
+
+        Map<String, String> index = getFontIndex();
         for (String name : names) {
-            for (String font : allFonts) {
-                if (font.toLowerCase().equals(name.toLowerCase())) {
-                    return Font.font(font, weight, posture, size);
-                }
+            String family = index.get(name.toLowerCase());
+            if (family != null) {
+                return getFont(family, weight, posture, size);
             }
         }
 
         // let JavaFX choose an appropriate alternative for the first font.
-        return Font.font(names.get(0), weight, posture, size);
+        return getFont(names.get(0), weight, posture, size);
+    }
+
+    /**
+     * Returns an interned {@link Font}, creating it on first request.
+     */
+    private static Font getFont(String family, FontWeight weight, FontPosture posture,
+            double size) {
+        FontKey key = new FontKey(family, weight, posture, size);
+        Font font = fonts.get(key);
+        if (font == null) {
+            font = Font.font(family, weight, posture, size);
+            Font existing = fonts.putIfAbsent(key, font);
+            if (existing != null) {
+                font = existing;
+            }
+        }
+        return font;
     }
 
     /**
@@ -171,4 +253,41 @@ public class JfxTypeHelper {
         return findFont(families, size, bold, italic);
     }
 
+    /**
+     * Key for interned {@link Font}s.
+     */
+    private static final class FontKey {
+
+        private final String family;
+        private final FontWeight weight;
+        private final FontPosture posture;
+        private final double size;
+
+        public FontKey(String family, FontWeight weight, FontPosture posture, double size) {
+            this.family = family;
+            this.weight = weight;
+            this.posture = posture;
+            this.size = size;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = family.hashCode();
+            h = 31 * h + weight.hashCode();
+            h = 31 * h + posture.hashCode();
+            return 31 * h + Double.valueOf(size).hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FontKey)) {
+                return false;
+            }
+
+            FontKey other = (FontKey) obj;
+            return family.equals(other.family) && weight == other.weight
+                    && posture == other.posture && Double.compare(size, other.size) == 0;
+        }
+    }
+
 }
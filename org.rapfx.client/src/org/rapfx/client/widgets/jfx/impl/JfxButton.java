@@ -10,6 +10,7 @@ import javafx.event.EventHandler;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonBase;
 
+import org.rapfx.client.protocol.types.RapProperty;
 import org.rapfx.client.protocol.types.operations.NotifyOperation;
 import org.rapfx.client.widgets.jfx.JfxControlObject;
 import org.rapfx.client.widgets.jfx.JfxNodeHandler;
@@ -31,6 +32,7 @@ public class JfxButton extends JfxControlObject<ButtonBase> {
         return btn;
     }
 
+    @RapProperty("text")
     public void setText(String value) {
         getNode().setText(value);
     }
@@ -8,6 +8,7 @@ import java.util.Map;
 import javafx.geometry.Rectangle2D;
 import javafx.scene.layout.Pane;
 
+import org.rapfx.client.protocol.types.RapProperty;
 import org.rapfx.client.widgets.jfx.JfxNodeHandler;
 import org.rapfx.client.widgets.jfx.JfxNodeObject;
 import org.rapfx.client.widgets.jfx.JfxTypeHelper;
@@ -29,6 +30,7 @@ public class JfxComposite extends JfxNodeObject<Pane> {
      * @param raw
      *            the protocol value for the bounds
      */
+    @RapProperty("clientArea")
     public void setClientArea(Object raw) {
         Rectangle2D bounds = JfxTypeHelper.toRectangle(raw);
         Pane node = getNode();
@@ -39,6 +41,7 @@ public class JfxComposite extends JfxNodeObject<Pane> {
      * @param raw
      *            the protocol value for the bounds
      */
+    @RapProperty("bounds")
     public void setBounds(Object raw) {
         Rectangle2D bounds = JfxTypeHelper.toRectangle(raw);
         Pane node = getNode();
@@ -15,6 +15,7 @@ import org.rapfx.client.ApplicationGlobals;
 import org.rapfx.client.lifecycle.LifeCycle;
 import org.rapfx.client.protocol.PropertyBuilder;
 import org.rapfx.client.protocol.types.AbstractRemoteObject;
+import org.rapfx.client.protocol.types.RapProperty;
 import org.rapfx.client.protocol.types.ReflectiveTypeHandler;
 import org.rapfx.client.protocol.types.RemoteObject;
 import org.rapfx.client.protocol.types.TypeHandler;
@@ -50,6 +51,7 @@ public class JfxDisplay extends AbstractRemoteObject {
      * @param controlId
      *            the control that will receive the focus
      */
+    @RapProperty("focusControl")
     public void setFocusControl(String controlId) {
         RemoteObject object = ApplicationGlobals.getInstance().getLifeCycle().getObjectRegistry()
                 .get(controlId);
@@ -8,6 +8,7 @@ import java.util.Map;
 import javafx.geometry.Pos;
 import javafx.scene.control.Label;
 
+import org.rapfx.client.protocol.types.RapProperty;
 import org.rapfx.client.widgets.jfx.JfxControlObject;
 import org.rapfx.client.widgets.jfx.JfxNodeHandler;
 import org.rapfx.client.widgets.jfx.impl.JfxStyleHolder.Style;
@@ -28,6 +29,7 @@ public class JfxLabel extends JfxControlObject<Label> {
         return lbl;
     }
 
+    @RapProperty("text")
     public void setText(String value) {
         getNode().setText(value);
     }
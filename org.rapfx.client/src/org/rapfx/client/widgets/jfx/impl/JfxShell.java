@@ -3,7 +3,6 @@
  */
 package org.rapfx.client.widgets.jfx.impl;
 
-import java.io.IOException;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Map;
@@ -34,14 +33,17 @@ import javafx.stage.WindowEvent;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.rapfx.client.ApplicationGlobals;
 import org.rapfx.client.protocol.theme.ThemeTypeHelper;
 import org.rapfx.client.protocol.theme.ThemeValues.BorderDefinition;
+import org.rapfx.client.protocol.types.RapProperty;
 import org.rapfx.client.protocol.types.RemoteObject;
 import org.rapfx.client.protocol.types.operations.NotifyOperation;
 import org.rapfx.client.protocol.types.operations.SetOperation;
 import org.rapfx.client.widgets.jfx.JfxBoundSetOperation;
 import org.rapfx.client.widgets.jfx.JfxNodeHandler;
 import org.rapfx.client.widgets.jfx.JfxNodeObject;
+import org.rapfx.client.widgets.jfx.JfxToolkit;
 import org.rapfx.client.widgets.jfx.JfxTypeHelper;
 import org.rapfx.client.widgets.jfx.impl.JfxStyleHolder.Style;
 import org.rapfx.client.widgets.jfx.theming.JfxSsClass;
@@ -76,6 +78,7 @@ public class JfxShell extends JfxNodeObject<Pane> {
     private final MaximizeHandler maximizeHandler = new MaximizeHandler();
 
     private Stage stage;
+    private JfxShell owner;
     private BorderDefinition border;
     private GridPane title;
     private Point2D minimumSize;
@@ -93,12 +96,7 @@ public class JfxShell extends JfxNodeObject<Pane> {
         stage.getScene().setFill(Color.TRANSPARENT);
         root.getChildren().add(clientArea);
 
-        try {
-            stage.getScene().getStylesheets()
-                    .add(getStylesheet().getTemporary().toURI().toString());
-        } catch (IOException e) {
-            log.warn("error loading stylesheet for " + this, e);
-        }
+        getStylesheet().apply(stage.getScene());
 
         if (style.hasStyle(Style.SYSTEM_MODAL)) {
             stage.initModality(Modality.APPLICATION_MODAL);
@@ -106,6 +104,7 @@ public class JfxShell extends JfxNodeObject<Pane> {
 
         stage.setOnCloseRequest(eventHandler);
         stage.setOnShown(eventHandler);
+        stage.setOnHidden(eventHandler);
 
         stage.widthProperty().addListener(sizeListener);
         stage.heightProperty().addListener(sizeListener);
@@ -206,9 +205,35 @@ public class JfxShell extends JfxNodeObject<Pane> {
      * @param parentId
      *            the remote object id of the parent shell.
      */
+    @RapProperty("parentShell")
     public void setParentShell(String parentId) {
-        JfxShell parent = getLifeCycle().getObjectRegistry().get(parentId);
-        stage.initOwner(parent.stage);
+        owner = getLifeCycle().getObjectRegistry().get(parentId);
+        stage.initOwner(owner.stage);
+        owner.attach(getObjectId());
+    }
+
+    /**
+     * Hides the {@link Stage} and removes all listeners this {@link JfxShell} installed on it, so
+     * that neither the {@link Stage} nor this {@link JfxShell} are kept alive by JavaFX.
+     */
+    @Override
+    public void dispose() {
+        stage.widthProperty().removeListener(sizeListener);
+        stage.heightProperty().removeListener(sizeListener);
+        stage.xProperty().removeListener(moveListener);
+        stage.yProperty().removeListener(moveListener);
+        stage.focusedProperty().removeListener(focusListener);
+        stage.setOnCloseRequest(null);
+        stage.setOnShown(null);
+        stage.hide();
+        stage.setOnHidden(null);
+
+        clientArea.getChildren().clear();
+        if (owner != null) {
+            owner.detach(getObjectId());
+            owner = null;
+        }
+        super.dispose();
     }
 
     private void createStageClip(Pane client, int arc) {
@@ -357,6 +382,7 @@ public class JfxShell extends JfxNodeObject<Pane> {
      * @param text
      *            the text that should be used as title for the {@link Stage}
      */
+    @RapProperty("text")
     public void setText(String text) {
         stage.setTitle(text);
     }
@@ -367,6 +393,7 @@ public class JfxShell extends JfxNodeObject<Pane> {
      * @param raw
      *            the raw protocol value for the bounds.
      */
+    @RapProperty("bounds")
     public void setBounds(Object raw) {
         Rectangle2D bounds = JfxTypeHelper.toRectangle(raw);
         stage.setX(bounds.getMinX());
@@ -380,6 +407,7 @@ public class JfxShell extends JfxNodeObject<Pane> {
      * @param active
      *            brings the current {@link Stage} to the front.
      */
+    @RapProperty("active")
     public void setActive(Boolean active) {
         if (active) {
             stage.toFront();
@@ -393,6 +421,7 @@ public class JfxShell extends JfxNodeObject<Pane> {
      * @param id
      *            the id of the control to be active
      */
+    @RapProperty("activeControl")
     public void setActiveControl(String id) {
         RemoteObject object = getLifeCycle().getObjectRegistry().get(id);
         if (object != null && object instanceof JfxNodeObject<?>) {
@@ -408,6 +437,7 @@ public class JfxShell extends JfxNodeObject<Pane> {
      * @param the
      *            raw protocol value for the minimum size
      */
+    @RapProperty("minimumSize")
     public void setMinimumSize(Object raw) {
         Point2D sz = JfxTypeHelper.toPoint(raw);
         if (sz != null) {
@@ -420,6 +450,7 @@ public class JfxShell extends JfxNodeObject<Pane> {
      *            whether the {@link Stage} should be shown or hidden.
      */
     @Override
+    @RapProperty("visibility")
     public void setVisibility(Boolean visible) {
         if (visible) {
             stage.show();
@@ -428,6 +459,7 @@ public class JfxShell extends JfxNodeObject<Pane> {
         }
     }
 
+    @RapProperty("mode")
     public void setMode(String mode) {
         log.debug("need setMode implementation");
     }
@@ -561,6 +593,14 @@ public class JfxShell extends JfxNodeObject<Pane> {
                 NotifyOperation op = new NotifyOperation(getObjectId(), "Close", null);
                 getLifeCycle().send(op);
             }
+
+            // lets the toolkit shut down once no shells are left, see JfxToolkit.
+            JfxToolkit tk = (JfxToolkit) ApplicationGlobals.getInstance().getToolkit();
+            if (event.getEventType() == WindowEvent.WINDOW_SHOWN) {
+                tk.shellVisibilityChanged(JfxShell.this, true);
+            } else if (event.getEventType() == WindowEvent.WINDOW_HIDDEN) {
+                tk.shellVisibilityChanged(JfxShell.this, false);
+            }
         }
 
     }
@@ -3,10 +3,11 @@
  */
 package org.rapfx.client.widgets.jfx.impl;
 
-import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
 
+import org.rapfx.client.protocol.theme.StateMask;
+
 /**
  * Holder for Style combinations applied to controls.
  */
@@ -19,7 +20,10 @@ public class JfxStyleHolder {
         NONE, TITLE, MIN, MAX, CLOSE, SYSTEM_MODAL, BORDER, RESIZE, WRAP, PUSH, VERTICAL, HORIZONTAL, RIGHT, LEFT, DOWN, UP, SHADOW_OUT, SHADOW_IN, ICON_WARNING, ICON_INFORMATION, ICON_ERROR, ARROW, TOGGLE, RADIO, CHECK, MULTI, SEPARATOR, FLAT, SINGLE, ON_TOP, APPLICATION_MODAL, NO_TRIM
     }
 
-    private final EnumSet<Style> styles = EnumSet.of(Style.NONE);
+    /**
+     * {@link StateMask} of the styles.
+     */
+    private long styles = StateMask.ofStyle(Style.NONE);
 
     public JfxStyleHolder(List<String> styles) {
         if (styles == null) {
@@ -28,15 +32,22 @@ public class JfxStyleHolder {
 
         for (String style : styles) {
             Style s = Style.valueOf(style);
-            this.styles.add(s);
+            this.styles |= StateMask.ofStyle(s);
         }
     }
 
     public boolean hasStyle(Style s) {
-        return styles.contains(s);
+        return (styles & StateMask.ofStyle(s)) != 0;
     }
 
     public Set<Style> getAllStyles() {
+        return StateMask.toStyles(styles);
+    }
+
+    /**
+     * @return the {@link StateMask} of all styles.
+     */
+    public long getStyleMask() {
         return styles;
     }
 
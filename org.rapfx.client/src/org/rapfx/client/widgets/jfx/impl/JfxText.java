@@ -10,6 +10,7 @@ import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.scene.control.TextField;
 
+import org.rapfx.client.protocol.types.RapProperty;
 import org.rapfx.client.protocol.types.operations.SetOperation;
 import org.rapfx.client.widgets.jfx.JfxControlObject;
 import org.rapfx.client.widgets.jfx.JfxNodeHandler;
@@ -36,6 +37,7 @@ public class JfxText extends JfxControlObject<TextField> {
         return node;
     }
 
+    @RapProperty("text")
     public void setText(String text) {
         getNode().setText(text);
     }
@@ -3,22 +3,35 @@
  */
 package org.rapfx.client.widgets.jfx.theming;
 
-import java.util.Collections;
 import java.util.Set;
 import java.util.TreeSet;
 
+import org.rapfx.client.protocol.theme.StateMask;
 import org.rapfx.client.protocol.theme.Theme;
-import org.rapfx.client.widgets.jfx.impl.JfxStyleHolder.Style;
 
 public class JfxSsClass {
 
     private final String internalName;
     private final Set<JfxSsContribution> contributions = new TreeSet<>();
-    private final Set<Style> styles;
-    private final Set<String> pseudo;
+    private final long styles;
+    private final long pseudo;
     private final String baseName;
 
-    JfxSsClass(String internalName, String baseName, Set<Style> styles, Set<String> pseudo) {
+    /**
+     * Incremented on each change of the {@link #contributions}.
+     */
+    private long version;
+
+    /**
+     * CSS generated by {@link #contribute(StringBuilder, Theme, long)}, along with the inputs it
+     * was generated from.
+     */
+    private String css;
+    private Theme cssTheme;
+    private long cssStamp;
+    private long cssVersion = -1;
+
+    JfxSsClass(String internalName, String baseName, long styles, long pseudo) {
         this.internalName = internalName;
         this.baseName = baseName;
         this.styles = styles;
@@ -50,34 +63,77 @@ public class JfxSsClass {
             contributions.remove(contribution);
         }
         contributions.add(contribution);
+        version++;
+        JfxStylesheet.changed();
     }
 
-    void contribute(StringBuilder classContents, Theme reference) {
+    /**
+     * Appends the CSS for this class. The CSS is generated only if the contributions, the
+     * {@link Theme} or the stamp changed since the last call.
+     * 
+     * @param classContents
+     *            the {@link StringBuilder} to append to
+     * @param reference
+     *            the {@link Theme} to take values from
+     * @param stamp
+     *            changes whenever the contents of the {@link Theme} changed.
+     */
+    synchronized void contribute(StringBuilder classContents, Theme reference, long stamp) {
+        if (css == null || cssTheme != reference || cssStamp != stamp || cssVersion != version) {
+            css = generate(reference);
+            cssTheme = reference;
+            cssStamp = stamp;
+            cssVersion = version;
+        }
+        classContents.append(css);
+    }
+
+    /**
+     * Appends everything apart from the {@link Theme} that influences the generated CSS.
+     * 
+     * @param builder
+     *            the {@link StringBuilder} to append to.
+     */
+    synchronized void fingerprint(StringBuilder builder) {
+        builder.append('\n').append(internalName).append(':');
+        for (JfxSsContribution child : contributions) {
+            builder.append(' ').append(child.getFingerprint());
+        }
+    }
+
+    private String generate(Theme reference) {
         if (contributions.isEmpty()) {
-            return;
+            return "";
         }
 
+        StringBuilder classContents = new StringBuilder();
         classContents.append(".").append(internalName).append(" {\n");
         for (JfxSsContribution child : contributions) {
             child.contribute(classContents, reference);
         }
         classContents.append("}\n\n");
+        return classContents.toString();
     }
 
-    Set<Style> getStyles() {
+    /**
+     * @return the {@link StateMask} of the styles of this class.
+     */
+    long getStyles() {
         return styles;
     }
 
-    Set<String> getPseudo() {
+    /**
+     * @return the {@link StateMask} of the pseudo-classes of this class.
+     */
+    long getPseudo() {
         return pseudo;
     }
 
-    Set<Style> getRelevantStyles() {
-        Set<Style> result = JfxStylesheet.getRelevantStyles(baseName);
-        if (result == null) {
-            result = Collections.emptySet();
-        }
-        return result;
+    /**
+     * @return the {@link StateMask} of the styles relevant for this class.
+     */
+    long getRelevantStyles() {
+        return JfxStylesheet.getRelevantStyles(baseName);
     }
 
 }
@@ -13,6 +13,15 @@ public abstract class JfxSsContribution implements Comparable<JfxSsContribution>
 
     public abstract Object getRawValue(Theme theme);
 
+    /**
+     * @return a description of everything apart from the {@link Theme} that influences the CSS
+     *         generated by this contribution. Used to detect whether a cached stylesheet is still
+     *         valid.
+     */
+    public String getFingerprint() {
+        return getClass().getName() + "/" + getFxAttribute();
+    }
+
     @Override
     public int compareTo(JfxSsContribution o) {
         return getFxAttribute().compareTo(o.getFxAttribute());
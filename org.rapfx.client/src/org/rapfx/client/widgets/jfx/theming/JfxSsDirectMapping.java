@@ -3,13 +3,12 @@
  */
 package org.rapfx.client.widgets.jfx.theming;
 
-import java.util.Collections;
 import java.util.Set;
 
+import org.rapfx.client.protocol.theme.StateMask;
 import org.rapfx.client.protocol.theme.Theme;
 import org.rapfx.client.protocol.theme.ThemeClass;
 import org.rapfx.client.protocol.theme.ThemeProperty;
-import org.rapfx.client.widgets.jfx.impl.JfxStyleHolder.Style;
 
 public class JfxSsDirectMapping extends JfxSsContribution {
 
@@ -20,6 +19,11 @@ public class JfxSsDirectMapping extends JfxSsContribution {
     private final String cssAttribute;
     private final String cssClass;
     private final Set<String> cssPseudos;
+
+    /**
+     * {@link StateMask} of the {@link #cssPseudos}, if given.
+     */
+    private final long cssPseudoMask;
     private final JfxSsType type;
 
     public JfxSsDirectMapping(JfxSsClass parent, JfxSsType type, String cssClass,
@@ -45,6 +49,7 @@ public class JfxSsDirectMapping extends JfxSsContribution {
         this.fxAttribute = fxAttribute;
         this.type = type;
         this.cssPseudos = cssPseudos;
+        this.cssPseudoMask = StateMask.internPseudos(cssPseudos);
     }
 
     public String getCssClass() {
@@ -73,6 +78,14 @@ public class JfxSsDirectMapping extends JfxSsContribution {
         }
     }
 
+    @Override
+    public String getFingerprint() {
+        return super.getFingerprint() + "=" + type + "(" + cssClass + "/" + cssAttribute + " "
+                + cssPseudos + " " + StateMask.toStyles(parent.getStyles()) + " "
+                + StateMask.toPseudos(parent.getPseudo()) + " "
+                + StateMask.toStyles(parent.getRelevantStyles()) + ")";
+    }
+
     /**
      * Retrieves the raw value for this attribute from the given Theme. This can be used to
      * implement custom evaluation of the raw theme data if required.
@@ -87,7 +100,7 @@ public class JfxSsDirectMapping extends JfxSsContribution {
         if (themeClass != null) {
             // first "fully qualified", with styles and states
             ThemeProperty prop = themeClass.findProperty(cssAttribute, parent.getStyles(), parent
-                    .getRelevantStyles(), cssPseudos == null ? parent.getPseudo() : cssPseudos);
+                    .getRelevantStyles(), cssPseudos == null ? parent.getPseudo() : cssPseudoMask);
 
             if (prop != null) {
                 return prop.get(type.getType());
@@ -95,15 +108,14 @@ public class JfxSsDirectMapping extends JfxSsContribution {
 
             // if not found, try without state, but with styles
             prop = themeClass.findProperty(cssAttribute, parent.getStyles(),
-                    parent.getRelevantStyles(), Collections.<String> emptySet());
+                    parent.getRelevantStyles(), 0);
 
             if (prop != null) {
                 return prop.get(type.getType());
             }
 
             // if still not found, try without any style and state
-            prop = themeClass.findProperty(cssAttribute, Collections.<Style> emptySet(),
-                    Collections.<Style> emptySet(), Collections.<String> emptySet());
+            prop = themeClass.findProperty(cssAttribute, 0, 0, 0);
 
             if (prop != null) {
                 return prop.get(type.getType());
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) Markus Duft <markus.duft@salomon.at>
+ */
+package org.rapfx.client.widgets.jfx.theming;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.net.URLStreamHandlerFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * URL protocol serving generated stylesheets from memory, so that JavaFX can load them without
+ * writing them to disc first. Contents are published under a path and served until withdrawn.
+ */
+class JfxSsProtocol extends URLStreamHandler implements URLStreamHandlerFactory {
+
+    private static final Log log = LogFactory.getLog(JfxSsProtocol.class);
+
+    static final String PROTOCOL = "rapfx-css";
+
+    private static final JfxSsProtocol instance = new JfxSsProtocol();
+    private static final boolean available = register();
+
+    private final Map<String, byte[]> contents = new ConcurrentHashMap<>();
+
+    private JfxSsProtocol() {
+    }
+
+    /**
+     * Installs the protocol for the whole JVM. This is only possible if no other
+     * {@link URLStreamHandlerFactory} has been installed before.
+     */
+    private static boolean register() {
+        try {
+            URL.setURLStreamHandlerFactory(instance);
+            return true;
+        } catch (Error e) {
+            log.info("cannot register " + PROTOCOL + " protocol, using temporary files ("
+                    + e.getMessage() + ")");
+            return false;
+        }
+    }
+
+    /**
+     * @return whether the protocol is available, see {@link #publish(String, byte[])}.
+     */
+    static boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Publishes contents under the given path.
+     * 
+     * @param path
+     *            the path to publish at, starting with a '/'.
+     * @param data
+     *            the contents
+     * @return the URL serving the contents.
+     */
+    static URL publish(String path, byte[] data) {
+        if (!available) {
+            throw new IllegalStateException(PROTOCOL + " protocol not available");
+        }
+
+        instance.contents.put(path, data);
+        try {
+            return new URL(PROTOCOL, null, path);
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException("cannot create URL for " + path, e);
+        }
+    }
+
+    /**
+     * Stops serving contents published at the given path.
+     * 
+     * @param path
+     *            the path previously passed to {@link #publish(String, byte[])}.
+     */
+    static void withdraw(String path) {
+        instance.contents.remove(path);
+    }
+
+    @Override
+    public URLStreamHandler createURLStreamHandler(String protocol) {
+        // null lets the JVM fall back to the default handlers for all other protocols.
+        return PROTOCOL.equals(protocol) ? this : null;
+    }
+
+    @Override
+    protected URLConnection openConnection(URL url) throws IOException {
+        final byte[] data = contents.get(url.getPath());
+
+        return new URLConnection(url) {
+            @Override
+            public void connect() throws IOException {
+                if (data == null) {
+                    // e.g. when JavaFX looks for a binary variant of the stylesheet.
+                    throw new FileNotFoundException(getURL().toString());
+                }
+                connected = true;
+            }
+
+            @Override
+            public InputStream getInputStream() throws IOException {
+                connect();
+                return new ByteArrayInputStream(data);
+            }
+
+            @Override
+            public String getContentType() {
+                return "text/css";
+            }
+
+            @Override
+            public int getContentLength() {
+                return data == null ? -1 : data.length;
+            }
+        };
+    }
+
+}
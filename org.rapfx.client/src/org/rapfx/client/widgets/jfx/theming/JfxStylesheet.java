@@ -4,113 +4,570 @@
 package org.rapfx.client.widgets.jfx.theming;
 
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Collections;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javafx.collections.ObservableList;
+import javafx.scene.Scene;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.rapfx.client.ApplicationGlobals;
 import org.rapfx.client.lifecycle.ObjectRegistry;
+import org.rapfx.client.protocol.theme.StateMask;
 import org.rapfx.client.protocol.theme.Theme;
+import org.rapfx.client.widgets.jfx.JfxToolkit;
 import org.rapfx.client.widgets.jfx.impl.JfxStyleHolder.Style;
 
+/**
+ * The stylesheet generated from a {@link Theme} and all registered {@link JfxSsClass}es.
+ * <p>
+ * The stylesheet is served from memory (see {@link JfxSsProtocol}) and versioned: each change of
+ * its contents is published under a new URL, and {@link Scene}s using the stylesheet (see
+ * {@link #apply(Scene)}) are switched to it by {@link #update()}. Scenes are not touched as long
+ * as the contents don't change, so JavaFX re-uses the already parsed stylesheet. The CSS of each
+ * {@link JfxSsClass} is cached and only generated again if the class changed.
+ */
 public class JfxStylesheet {
 
-    private File tempFile;
-    private final Theme theme;
+    private static final Log log = LogFactory.getLog(JfxStylesheet.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     private static final ObjectRegistry<JfxSsClass> classRegistry = new ObjectRegistry<>();
-    private static final Map<String, EnumSet<Style>> relevantStyles = new TreeMap<>();
+    private static final Style[] STYLES = Style.values();
+
+    /**
+     * {@link StateMask}s of the relevant styles by base name.
+     */
+    private static final Map<String, Long> relevantStyles = new ConcurrentHashMap<>();
+
+    /**
+     * Interned names of styled classes by base name and {@link StateMask} of the applied styles.
+     * Dropped for a base name when its relevant styles change.
+     */
+    private static final ConcurrentMap<String, ConcurrentMap<Long, String>> styledNames =
+            new ConcurrentHashMap<>();
+
+    /**
+     * {@link JfxSsClass}es by base name, styles and pseudo-classes. Dropped for a base name when
+     * its relevant styles change, as they may map to a differently named class then.
+     */
+    private static final ConcurrentMap<ClassKey, JfxSsClass> classes = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented on each change to any {@link JfxSsClass}.
+     */
+    private static final AtomicLong changes = new AtomicLong();
+
+    private static final AtomicInteger sheetIds = new AtomicInteger();
+
+    /**
+     * Locations of the JavaFX stylesheet class, which is able to compile CSS to binary form.
+     */
+    private static final String[] STYLESHEET_CLASSES = { "javafx.css.Stylesheet",
+            "com.sun.javafx.css.Stylesheet" };
+
+    private final Theme theme;
+    private final int sheetId = sheetIds.incrementAndGet();
+
+    /**
+     * Fingerprint of the {@link #theme}'s contents, <code>null</code> if unknown.
+     */
+    private String themeFingerprint;
 
+    /**
+     * Incremented whenever the contents of the {@link #theme} changed, see
+     * {@link #invalidate(String)}.
+     */
+    private long themeStamp;
+
+    /**
+     * The value of {@link #changes} the published contents were generated for.
+     */
+    private long publishedChanges = -1;
+    private int generation;
+    private byte[] contents;
+    private String url;
+    private String path;
+    private File tempFile;
+
+    /**
+     * {@link Scene}s using this stylesheet, along with the URL they currently use.
+     */
+    private final Map<Scene, String> scenes = new WeakHashMap<>();
+
+    /**
+     * Creates a stylesheet that is not cached across sessions.
+     * 
+     * @param theme
+     *            the {@link Theme} to take values from.
+     */
     public JfxStylesheet(Theme theme) {
+        this(theme, null);
+    }
+
+    /**
+     * Creates a stylesheet that is cached in binary form across sessions, see
+     * {@link #getUrl()}.
+     * 
+     * @param theme
+     *            the {@link Theme} to take values from.
+     * @param themeFingerprint
+     *            a fingerprint of the contents of the {@link Theme}, see
+     *            {@link #digest(byte[][])}. <code>null</code> disables caching.
+     */
+    public JfxStylesheet(Theme theme, String themeFingerprint) {
         this.theme = theme;
+        this.themeFingerprint = themeFingerprint;
     }
 
     public static final JfxSsClass get(Class<?> clazz) {
-        return get(clazz.getSimpleName(), Collections.<Style> emptySet(),
-                Collections.<String> emptySet());
+        return get(clazz.getSimpleName(), 0, 0);
     }
 
     public static final JfxSsClass get(Class<?> clazz, Set<Style> styles) {
-        return get(clazz.getSimpleName(), styles, Collections.<String> emptySet());
+        return get(clazz.getSimpleName(), StateMask.ofStyles(styles), 0);
     }
 
     public static final void setRelevantStyles(String fxName, EnumSet<Style> styles) {
-        relevantStyles.put(fxName, styles);
+        relevantStyles.put(fxName, StateMask.ofStyles(styles));
+
+        styledNames.remove(fxName);
+        for (ClassKey key : classes.keySet()) {
+            if (key.base.equals(fxName)) {
+                classes.remove(key);
+            }
+        }
     }
 
-    static final Set<Style> getRelevantStyles(String fxName) {
-        return relevantStyles.get(fxName);
+    /**
+     * @param fxName
+     *            the base name of a class
+     * @return the {@link StateMask} of the styles relevant for the class, 0 if none.
+     */
+    static final long getRelevantStyles(String fxName) {
+        Long relevant = relevantStyles.get(fxName);
+        return relevant == null ? 0 : relevant;
     }
 
     public static JfxSsClass get(String fxName) {
-        return get(fxName, Collections.<Style> emptySet(), Collections.<String> emptySet());
+        return get(fxName, 0, 0);
     }
 
     public static final JfxSsClass get(String fxName, Set<Style> styles, Set<String> pseudo) {
-        String finalName = getCompleteName(fxName, styles, pseudo);
-        JfxSsClass cls = classRegistry.get(finalName);
+        return get(fxName, StateMask.ofStyles(styles), StateMask.internPseudos(pseudo));
+    }
 
-        if (cls == null) {
-            cls = new JfxSsClass(finalName, fxName, styles, pseudo);
-            classRegistry.set(finalName, cls);
+    /**
+     * Returns the {@link JfxSsClass} for the given base name, styles and pseudo-classes, creating
+     * it on first request.
+     * 
+     * @param fxName
+     *            the base name of the class
+     * @param styles
+     *            the {@link StateMask} of the styles of the class
+     * @param pseudo
+     *            the {@link StateMask} of the pseudo-classes of the class, see
+     *            {@link StateMask#internPseudos(Set)}.
+     * @return the {@link JfxSsClass}.
+     */
+    public static final JfxSsClass get(String fxName, long styles, long pseudo) {
+        ClassKey key = new ClassKey(fxName, styles, pseudo);
+        JfxSsClass cls = classes.get(key);
+        if (cls != null) {
+            return cls;
         }
 
+        synchronized (classRegistry) {
+            String finalName = getCompleteName(fxName, styles, pseudo);
+            cls = classRegistry.get(finalName);
+
+            if (cls == null) {
+                cls = new JfxSsClass(finalName, fxName, styles, pseudo);
+                classRegistry.set(finalName, cls);
+            }
+        }
+
+        classes.put(key, cls);
         return cls;
     }
 
-    private static String getCompleteName(String fxName, Set<Style> styles, Set<String> pseudo) {
-        StringBuilder nameBuilder = new StringBuilder(getStyledName(fxName, styles));
-        for (String p : pseudo) {
+    private static String getCompleteName(String fxName, long styles, long pseudo) {
+        String styledName = getStyledName(fxName, styles);
+        if (pseudo == 0) {
+            return styledName;
+        }
+
+        StringBuilder nameBuilder = new StringBuilder(styledName);
+        for (String p : StateMask.toPseudos(pseudo)) {
             nameBuilder.append(p);
         }
         return nameBuilder.toString();
     }
 
     public static String getStyledName(String base, Set<Style> styles) {
-        if (styles == null || styles.isEmpty()) {
+        return getStyledName(base, StateMask.ofStyles(styles));
+    }
+
+    /**
+     * Calculates the name of a class with the given styles. Only styles relevant for the class
+     * (see {@link #setRelevantStyles(String, EnumSet)}) become part of the name.
+     * 
+     * @param base
+     *            the base name of the class
+     * @param styles
+     *            the {@link StateMask} of the styles
+     * @return the name of the class.
+     */
+    public static String getStyledName(String base, long styles) {
+        long applied = styles & getRelevantStyles(base);
+        if (applied == 0) {
             return base;
         }
+
+        ConcurrentMap<Long, String> names = styledNames.get(base);
+        if (names == null) {
+            names = new ConcurrentHashMap<>();
+            ConcurrentMap<Long, String> existing = styledNames.putIfAbsent(base, names);
+            if (existing != null) {
+                names = existing;
+            }
+        }
+
+        String name = names.get(applied);
+        if (name == null) {
+            name = buildStyledName(base, applied);
+            names.put(applied, name);
+        }
+        return name;
+    }
+
+    private static String buildStyledName(String base, long applied) {
+        // in ordinal order, like iterating an EnumSet.
         StringBuilder nameBuilder = new StringBuilder(base);
-        for (Style s : styles) {
-            if (isStyleRelevant(base, s)) {
-                nameBuilder.append('_').append(s.name());
+        long remaining = applied;
+        while (remaining != 0) {
+            int ordinal = Long.numberOfTrailingZeros(remaining);
+            nameBuilder.append('_').append(STYLES[ordinal].name());
+            remaining &= remaining - 1;
+        }
+        return nameBuilder.toString().intern();
+    }
+
+    /**
+     * Records a change to a {@link JfxSsClass}.
+     */
+    static void changed() {
+        changes.incrementAndGet();
+    }
+
+    /**
+     * Adds this stylesheet to the given {@link Scene}. The {@link Scene} is switched to newer
+     * versions of the stylesheet on {@link #update()}.
+     * 
+     * @param scene
+     *            the {@link Scene} to style.
+     */
+    public synchronized void apply(Scene scene) {
+        // switches other scenes as well, in case a new version is published.
+        update();
+        if (url == null) {
+            return;
+        }
+
+        scene.getStylesheets().add(url);
+        scenes.put(scene, url);
+    }
+
+    /**
+     * Marks the contents of the {@link Theme} as changed (e.g. a new fallback), so that the CSS of
+     * all classes is generated again on the next {@link #update()}.
+     * 
+     * @param themeFingerprint
+     *            the fingerprint of the new contents of the {@link Theme}, <code>null</code> to
+     *            disable caching.
+     */
+    public synchronized void invalidate(String themeFingerprint) {
+        this.themeFingerprint = themeFingerprint;
+        themeStamp++;
+        publishedChanges = -1;
+    }
+
+    /**
+     * Publishes a new version of the stylesheet if its contents changed, and switches all
+     * {@link Scene}s using it (see {@link #apply(Scene)}) to the new version.
+     */
+    public synchronized void update() {
+        String current = getUrl();
+        if (current == null) {
+            return;
+        }
+
+        for (Map.Entry<Scene, String> entry : scenes.entrySet()) {
+            if (current.equals(entry.getValue())) {
+                continue;
             }
+
+            ObservableList<String> sheets = entry.getKey().getStylesheets();
+            int index = sheets.indexOf(entry.getValue());
+            if (index >= 0) {
+                sheets.set(index, current);
+            } else {
+                sheets.add(current);
+            }
+            entry.setValue(current);
         }
-        return nameBuilder.toString();
     }
 
-    private static boolean isStyleRelevant(String base, Style s) {
-        EnumSet<Style> relevant = relevantStyles.get(base);
-        if (relevant == null) {
-            return false;
+    /**
+     * Returns the URL of the current version of the stylesheet. If a fingerprint of the
+     * {@link Theme} is known, a binary version of the stylesheet is compiled in the background and
+     * cached in the {@link JfxToolkit#CACHE_DIR}. Later sessions with the same {@link Theme},
+     * {@link JfxSsClass}es and JavaFX version use the cached binary version directly, without
+     * generating or parsing CSS.
+     * 
+     * @return the URL of the current version of the stylesheet, or <code>null</code> if it cannot
+     *         be provided.
+     */
+    public synchronized String getUrl() {
+        long current = changes.get();
+        if (url != null && publishedChanges == current) {
+            return url;
+        }
+
+        File binary = getBinaryFile();
+        if (binary != null && binary.isFile()) {
+            if (log.isDebugEnabled()) {
+                log.debug("using cached binary stylesheet " + binary);
+            }
+            publishedChanges = current;
+            contents = null;
+            switchTo(binary.toURI().toString(), null, null);
+            return url;
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, JfxSsClass> classEntry : classRegistry.getAll()) {
+            classEntry.getValue().contribute(builder, theme, themeStamp);
+        }
+        byte[] generated = builder.toString().getBytes(UTF8);
+        publishedChanges = current;
+
+        // unchanged contents keep their URL, so that scenes don't reload the stylesheet.
+        if (url != null && Arrays.equals(contents, generated)) {
+            return url;
+        }
+
+        try {
+            publish(generated);
+        } catch (IOException e) {
+            log.warn("cannot provide stylesheet", e);
+            publishedChanges = -1;
+            return url;
+        }
+
+        if (binary != null) {
+            compile(generated, binary);
         }
 
-        return relevant.contains(s);
+        if (log.isDebugEnabled()) {
+            log.debug("published stylesheet version " + generation + " (" + generated.length
+                    + " bytes) at " + url);
+        }
+        return url;
     }
 
-    public File getTemporary() throws IOException {
-        if (tempFile != null && tempFile.exists()) {
-            return tempFile;
+    private void publish(byte[] generated) throws IOException {
+        generation++;
+        contents = generated;
+
+        if (JfxSsProtocol.isAvailable()) {
+            String newPath = "/" + sheetId + "/" + generation + ".css";
+            switchTo(JfxSsProtocol.publish(newPath, generated).toExternalForm(), newPath, null);
+            return;
         }
 
-        tempFile = File.createTempFile("rwt-", ".css");
-        tempFile.deleteOnExit();
+        // fall back to a temporary file if the protocol cannot be installed.
+        File newFile = File.createTempFile("rwt-", ".css");
+        newFile.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(newFile)) {
+            out.write(generated);
+        }
+        switchTo(newFile.toURI().toString(), null, newFile);
+    }
 
-        write(tempFile);
+    /**
+     * Makes the given URL the current one, releasing resources of the previous one. Scenes still
+     * using the previous version have parsed it already.
+     */
+    private void switchTo(String newUrl, String newPath, File newFile) {
+        if (path != null) {
+            JfxSsProtocol.withdraw(path);
+        }
+        if (tempFile != null && !tempFile.delete()) {
+            tempFile.deleteOnExit();
+        }
 
-        return tempFile;
+        url = newUrl;
+        path = newPath;
+        tempFile = newFile;
     }
 
-    private void write(File file) throws IOException {
-        StringBuilder contents = new StringBuilder();
+    /**
+     * @return the location of the binary version of the stylesheet in the cache, or
+     *         <code>null</code> if the stylesheet is not cached.
+     */
+    private File getBinaryFile() {
+        if (themeFingerprint == null) {
+            return null;
+        }
+
+        StringBuilder key = new StringBuilder(themeFingerprint);
+        key.append('\n').append(System.getProperty("javafx.runtime.version"));
+
+        // the CSS references images by absolute URLs on the server, see ThemeTypeHelper.
+        key.append('\n').append(ApplicationGlobals.getInstance().getTransport().getContextURL(""));
+
         for (Map.Entry<String, JfxSsClass> classEntry : classRegistry.getAll()) {
-            classEntry.getValue().contribute(contents, theme);
+            classEntry.getValue().fingerprint(key);
+        }
+
+        String name = digest(key.toString().getBytes(UTF8)) + ".bss";
+        return new File(new File(JfxToolkit.CACHE_DIR, "css"), name);
+    }
+
+    /**
+     * Compiles the given CSS to the binary format of JavaFX in a background {@link Thread}.
+     * 
+     * @param css
+     *            the CSS to compile
+     * @param target
+     *            the binary file to create
+     */
+    private static void compile(final byte[] css, final File target) {
+        Thread compiler = new Thread("RAP Client Stylesheet Compiler") {
+            @Override
+            public void run() {
+                File dir = target.getParentFile();
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    log.debug("cannot create " + dir + ", not caching stylesheet");
+                    return;
+                }
+
+                File source = new File(dir, target.getName() + ".css");
+                File tmp = new File(dir, target.getName() + ".tmp");
+                try {
+                    try (OutputStream out = new FileOutputStream(source)) {
+                        out.write(css);
+                    }
+
+                    getConverter().invoke(null, source, tmp);
+                    if (!tmp.renameTo(target)) {
+                        log.debug("cannot create " + target);
+                    }
+                } catch (Exception e) {
+                    log.debug("cannot compile stylesheet to " + target, e);
+                } finally {
+                    source.delete();
+                    tmp.delete();
+                }
+            }
+        };
+        compiler.setDaemon(true);
+        compiler.start();
+    }
+
+    /**
+     * @return the JavaFX method converting CSS to binary form. This is not public API, so it is
+     *         looked up reflectively in all known locations.
+     */
+    private static Method getConverter() throws NoSuchMethodException {
+        for (String name : STYLESHEET_CLASSES) {
+            try {
+                return Class.forName(name).getMethod("convertToBinary", File.class, File.class);
+            } catch (ClassNotFoundException | NoSuchMethodException e) {
+                // try next.
+            }
+        }
+        throw new NoSuchMethodException("Stylesheet.convertToBinary");
+    }
+
+    /**
+     * Calculates a fingerprint of the given data, for example the contents of a {@link Theme}.
+     * 
+     * @param parts
+     *            the data to calculate the fingerprint of
+     * @return the fingerprint as hex string.
+     */
+    public static String digest(byte[]... parts) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+
+        for (byte[] part : parts) {
+            if (part != null) {
+                digest.update(part);
+            }
+            // separate parts, so that moving bytes from one to the other changes the result.
+            digest.update((byte) 0);
         }
 
-        try (FileWriter writer = new FileWriter(file)) {
-            writer.write(contents.toString());
+        StringBuilder result = new StringBuilder();
+        for (byte b : digest.digest()) {
+            result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(
+                    Character.forDigit(b & 0xF, 16));
         }
+        return result.toString();
     }
+
+    /**
+     * Identifies a {@link JfxSsClass} by its base name, styles and pseudo-classes.
+     */
+    private static final class ClassKey {
+
+        private final String base;
+        private final long styles;
+        private final long pseudo;
+
+        public ClassKey(String base, long styles, long pseudo) {
+            this.base = base;
+            this.styles = styles;
+            this.pseudo = pseudo;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = base.hashCode();
+            h = 31 * h + (int) (styles ^ (styles >>> 32));
+            return 31 * h + (int) (pseudo ^ (pseudo >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ClassKey)) {
+                return false;
+            }
+
+            ClassKey other = (ClassKey) obj;
+            return styles == other.styles && pseudo == other.pseudo && base.equals(other.base);
+        }
+    }
+
 }